@@ -19,16 +19,20 @@
 package com.github.jferard.charbarge;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 
 /**
  * A Buffer is a wrap over a CharBuffer.
- * The Buffer may be : 1. flushed into a writer ; 2. closed
+ * The Buffer may be : 1. filled by the producers ; 2. flushed into an Appendable by the consumer.
+ * A Buffer is not thread safe: the barge hands it either to the producers or to the consumer.
  */
 class Buffer {
     private CharBuffer buf;
     private boolean accept;
-    private boolean closed;
 
     /**
      * Create a new Buffer
@@ -40,36 +44,20 @@ class Buffer {
     }
 
     /**
-     * Flush the wrapped buffer to a Appendable. The data will be flushed iff there is no room left in the buffer.
-     * More formally, the last attempt to "accept" a CharSequence failed.
+     * Flush the wrapped buffer to a Appendable. The buffer is empty after the flush, even if the Appendable failed.
      * @param appendable
-     * @return true if the buffer was flushed
      * @throws IOException
      */
-    public synchronized boolean flushTo(Appendable appendable) throws IOException {
-        if(this.accept) {
-            return false;
-        } else {
-            this.forceFlushTo(appendable);
-            return true;
-        }
-    }
-
-    /**
-     * Flush the wrapped buffer to a Appendable.
-     * @param appendable
-     * @throws IOException
-     */
-    public synchronized void forceFlushTo(Appendable appendable) throws IOException {
-        this.buf.flip();
-        appendable.append(this.buf);
+    public void flushTo(Appendable appendable) throws IOException {
         this.buf.flip();
-        this.buf.clear();
-        this.accept = true;
-        this.notifyAll();
+        try {
+            appendable.append(this.buf);
+        } finally {
+            this.buf.clear();
+            this.accept = true;
+        }
     }
 
-
     /**
      * @param cs
      * @return true if there is enough room left for the CharSequence
@@ -84,6 +72,16 @@ class Buffer {
         return this.accept;
     }
 
+    /**
+     * @param length the number of chars to write
+     * @return the number of chars that can be written now, 0 if the buffer is full
+     */
+    public int acceptUpTo(int length) {
+        int room = Math.min(length, this.buf.remaining());
+        this.accept = room > 0;
+        return room;
+    }
+
     /**
      * Append a CharSequence to the buffer. One must call "accept" before append.
      * @param cs
@@ -97,23 +95,143 @@ class Buffer {
     }
 
     /**
-     * Close the buffer after the next flush. That means: 1. the buffer won't accept more chars.
-     * 2. the buffer will be closed on next flush
+     * Append a char to the buffer. One must call "acceptUpTo" before append.
+     * @param c the char
+     * @throws IllegalStateException if accept was not called
      */
-    public void closeAfterNextFlush() {
-        this.accept = false;
-        this.closed = true;
+    public void append(char c) {
+        if (!this.accept)
+            throw new IllegalStateException("Use accept before append!");
+
+        this.buf.put(c);
     }
 
-    @Override
-    public String toString() {
-        return "Buffer[" + new String(this.buf.array()) + ", accept=" + this.accept + ", closed=" + this.closed + "]";
+    /**
+     * Append chars to the buffer. One must call "acceptUpTo" before append.
+     * @param cbuf the chars
+     * @param off the offset of the first char
+     * @param len the number of chars
+     * @throws IllegalStateException if accept was not called
+     */
+    public void append(char[] cbuf, int off, int len) {
+        if (!this.accept)
+            throw new IllegalStateException("Use accept before append!");
+
+        this.buf.put(cbuf, off, len);
+    }
+
+    /**
+     * Append a part of a CharSequence to the buffer, without creating a sub sequence. One must call "acceptUpTo"
+     * before append.
+     * @param cs the CharSequence
+     * @param off the offset of the first char
+     * @param len the number of chars
+     * @throws IllegalStateException if accept was not called
+     */
+    public void append(CharSequence cs, int off, int len) {
+        if (!this.accept)
+            throw new IllegalStateException("Use accept before append!");
+
+        if (cs instanceof String) {
+            this.buf.put((String) cs, off, off + len);
+        } else {
+            for (int i = off; i < off + len; i++)
+                this.buf.put(cs.charAt(i));
+        }
+    }
+
+    /**
+     * Format a record into the buffer. If the record does not fit, the buffer is left unchanged and won't accept
+     * more chars. If the formatter fails, the buffer is left unchanged and the exception is rethrown.
+     * @param formatter the formatter
+     * @param record the record
+     * @param <T> the type of the record
+     * @return true if the record was formatted
+     * @throws IllegalArgumentException if the record is larger than the buffer
+     */
+    public <T> boolean format(RecordFormatter<? super T> formatter, T record) {
+        int position = this.buf.position();
+        try {
+            formatter.format(record, this.buf);
+            this.accept = true;
+        } catch (BufferOverflowException e) {
+            this.buf.position(position);
+            if (position == 0)
+                throw new IllegalArgumentException(e);
+            this.accept = false;
+        } catch (RuntimeException e) {
+            this.buf.position(position);
+            throw e;
+        }
+        return this.accept;
+    }
+
+    /**
+     * Decode bytes into the buffer. The buffer won't accept more chars if it is full.
+     * @param decoder the decoder
+     * @param in the bytes
+     * @param endOfInput true if there are no more bytes to decode
+     * @return the result of the decoder: OVERFLOW if the buffer is full
+     */
+    public CoderResult decode(CharsetDecoder decoder, ByteBuffer in, boolean endOfInput) {
+        CoderResult result = decoder.decode(in, this.buf, endOfInput);
+        this.accept = !result.isOverflow();
+        return result;
+    }
+
+    /**
+     * Flush the decoder into the buffer, once all the bytes are decoded.
+     * @param decoder the decoder
+     * @return the result of the decoder: OVERFLOW if the buffer is full
+     */
+    public CoderResult flushDecoder(CharsetDecoder decoder) {
+        CoderResult result = decoder.flush(this.buf);
+        this.accept = !result.isOverflow();
+        return result;
+    }
+
+    /**
+     * Read chars from a Readable until the buffer is full, the Readable is exhausted, or a read returns less chars
+     * than requested (the next read could block).
+     * @param readable the source
+     * @return false if the Readable is exhausted
+     * @throws IOException
+     */
+    public boolean fill(Readable readable) throws IOException {
+        while (this.buf.hasRemaining()) {
+            int requested = this.buf.remaining();
+            int n = readable.read(this.buf);
+            if (n == -1)
+                return false;
+            else if (n < requested)
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Remove all the chars from the buffer.
+     */
+    public void clear() {
+        this.buf.clear();
+    }
+
+    /**
+     * @return the number of chars in the buffer
+     */
+    public int length() {
+        return this.buf.position();
     }
 
     /**
-     * @return true if the buffer was closed and flushed.
+     * @return true if there is no char in the buffer
      */
-    public boolean isOpen() {
-        return !this.closed || !this.accept;
+    public boolean isEmpty() {
+        return this.buf.position() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Buffer[" + new String(this.buf.array()) + ", accept=" + this.accept + "]";
     }
 }
\ No newline at end of file
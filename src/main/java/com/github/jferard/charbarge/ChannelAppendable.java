@@ -0,0 +1,118 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A ChannelAppendable encodes the chars it receives and writes the bytes to a channel.
+ * It counts the chars and the bytes written.
+ *
+ * The chars are a stream: a surrogate pair split between two appends is kept whole. Call end when the stream ends.
+ */
+class ChannelAppendable implements Appendable {
+    private WritableByteChannel channel;
+    private StreamEncoder encoder;
+    private long charCount;
+    private long byteCount;
+
+    /**
+     * Create a new ChannelAppendable
+     * @param channel the destination channel
+     * @param charset the charset used to encode the chars
+     * @param size the size of the bytes buffer
+     */
+    public ChannelAppendable(WritableByteChannel channel, Charset charset, int size) {
+        this.channel = channel;
+        this.encoder = new StreamEncoder(charset, ByteBuffer.allocate(size)) {
+            @Override
+            protected ByteBuffer drain(ByteBuffer bytes) throws IOException {
+                return ChannelAppendable.this.writeBytes(bytes);
+            }
+        };
+        this.charCount = 0;
+        this.byteCount = 0;
+    }
+
+    /**
+     * Encode and write a CharSequence to the channel. If the CharSequence is a CharBuffer, its position is moved
+     * to its limit.
+     * @param cs
+     * @return this
+     * @throws IOException
+     */
+    public Appendable append(CharSequence cs) throws IOException {
+        CharBuffer in = cs instanceof CharBuffer ? (CharBuffer) cs : CharBuffer.wrap(cs);
+        this.charCount += in.remaining();
+        this.encoder.encode(in);
+        this.encoder.drain();
+        return this;
+    }
+
+    /**
+     * End the stream of chars: write the chars that were kept (a trailing high surrogate) and flush the encoder.
+     * @throws IOException
+     */
+    public void end() throws IOException {
+        this.encoder.end();
+        this.encoder.drain();
+    }
+
+    /**
+     * Write the next bytes to another channel, e.g. after a file was rolled.
+     * @param channel the new channel
+     */
+    public void setChannel(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public Appendable append(CharSequence cs, int start, int end) throws IOException {
+        return this.append(CharBuffer.wrap(cs, start, end));
+    }
+
+    public Appendable append(char c) throws IOException {
+        return this.append(String.valueOf(c));
+    }
+
+    /**
+     * @return the number of chars written since the creation
+     */
+    public long getCharCount() {
+        return this.charCount;
+    }
+
+    /**
+     * @return the number of bytes written since the creation
+     */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    private ByteBuffer writeBytes(ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining())
+            this.byteCount += this.channel.write(bytes);
+        bytes.clear();
+        return bytes;
+    }
+}
@@ -18,15 +18,32 @@
  */
 package com.github.jferard.charbarge;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A CharBarge is a container that carries chars between a producer and a consumer.
- * It uses the old "double buffer" pattern.
+ * A CharBarge is a container that carries chars between producers and a consumer.
+ * It uses the old "double buffer" pattern: the producers fill the front buffer. When the front buffer is full, it is
+ * sealed and handed to the consumer, and the free buffer becomes the front buffer.
+ *
+ * The consumer writes the sealed buffer without holding the lock: the producers only wait if the front buffer is
+ * full and the consumer has not freed the other buffer yet.
  */
 public class CharBarge implements Appendable {
+    private static final long MAP_SIZE = 64 * 1024 * 1024;
 
     /**
      * Create a CharBarge of a given size
@@ -39,88 +56,474 @@ public class CharBarge implements Appendable {
         return new CharBarge(frontBuffer, backBuffer);
     }
 
+    private final Lock lock;
+    private final Condition bufferFreed;
+    private final Condition bufferSealed;
+    /** the buffer filled by the producers */
     private Buffer frontBuffer;
-    private Buffer backBuffer;
+    /** the empty buffer, or null if it is sealed or being written by the consumer */
+    private Buffer freeBuffer;
+    /** the full buffer waiting for the consumer, or null */
+    private Buffer sealedBuffer;
+    private boolean closed;
     private boolean emergencyClose;
+    private boolean flushRequested;
+    private long appendedCount;
 
     CharBarge(Buffer frontBuffer, Buffer backBuffer) {
+        this.lock = new ReentrantLock();
+        this.bufferFreed = this.lock.newCondition();
+        this.bufferSealed = this.lock.newCondition();
         this.frontBuffer = frontBuffer;
-        this.backBuffer = backBuffer;
+        this.freeBuffer = backBuffer;
+        this.sealedBuffer = null;
+        this.closed = false;
         this.emergencyClose = false;
+        this.flushRequested = false;
+        this.appendedCount = 0;
     }
 
     /**
-     * Flush the back buffer to the writer, and swap buffers.
+     * Wait for a sealed buffer and flush it to the appendable. If the barge is closed or a flush was requested, the
+     * front buffer is sealed even if it is not full.
+     * The lock is not held during the flush.
      * @param appendable
      * @throws IOException
      */
-    public synchronized void flushTo(Appendable appendable) throws IOException {
-        while (!this.emergencyClose && !this.backBuffer.flushTo(appendable)) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new IOException(e);
-            }
-        }
+    public void flushTo(Appendable appendable) throws IOException {
+        Buffer buffer = this.takeSealedBuffer(false, -1);
+        if (buffer != null)
+            this.flushAndFree(buffer, appendable);
+    }
 
-        this.swapBuffers();
-        this.notifyAll();
+    /**
+     * Flush the sealed buffer and the front buffer to the appendable, without waiting.
+     * @param appendable
+     * @throws IOException
+     */
+    public void forceFlushTo(Appendable appendable) throws IOException {
+        Buffer buffer;
+        while ((buffer = this.takeSealedBuffer(true, 0)) != null)
+            this.flushAndFree(buffer, appendable);
     }
 
     /**
-     * Flush the back buffer to the writer, and swap buffers.
+     * Wait at most timeout milliseconds for a sealed buffer and flush it to the appendable (see flushTo).
      * @param appendable
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return false if there was nothing to flush
      * @throws IOException
      */
-    public synchronized void forceFlushTo(Appendable appendable) throws IOException {
-        if (this.emergencyClose) {
-            this.notifyAll();
-            return;
-        }
+    boolean flushTo(Appendable appendable, long timeout) throws IOException {
+        Buffer buffer = this.takeSealedBuffer(false, TimeUnit.MILLISECONDS.toNanos(Math.max(timeout, 0)));
+        if (buffer == null)
+            return false;
+        this.flushAndFree(buffer, appendable);
+        return true;
+    }
 
-        this.backBuffer.forceFlushTo(appendable);
-        this.frontBuffer.forceFlushTo(appendable);
-        this.notifyAll();
+    /**
+     * Flush the sealed buffer, or else the front buffer, without waiting.
+     * @param appendable
+     * @return false if there was nothing to flush
+     * @throws IOException
+     */
+    boolean flushOnceTo(Appendable appendable) throws IOException {
+        Buffer buffer = this.takeSealedBuffer(true, 0);
+        if (buffer == null)
+            return false;
+        this.flushAndFree(buffer, appendable);
+        return true;
     }
 
+    /**
+     * Ask the consumer to flush the front buffer on its next call to flushTo, even if it is not full.
+     */
+    public void flush() {
+        this.lock.lock();
+        try {
+            this.flushRequested = true;
+            this.bufferSealed.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
     /**
-     * Append a CharSequence to the front buffer. If the front buffer is full, swap buffers and retry.
+     * Append a CharSequence to the front buffer. If the front buffer is full, seal it and retry.
      * @param cs
      * @return
      * @throws IOException
      */
-    public synchronized Appendable append(CharSequence cs) throws IOException {
-         try {
-            while (!this.frontBuffer.accept(cs)) {
-                this.swapBuffers();
+    public Appendable append(CharSequence cs) throws IOException {
+        this.lock.lock();
+        try {
+            this.checkOpen();
+            while (!this.frontBuffer.accept(cs))
+                this.sealFrontBufferOrWait();
+            this.frontBuffer.append(cs);
+            this.appendedCount += cs.length();
+        } catch (IllegalArgumentException e) {
+            this.emergencyClose = true;
+            this.bufferSealed.signalAll(); // notify before exit !!!
+            this.bufferFreed.signalAll();
+            throw e;
+        } finally {
+            this.lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Append a CharSequence to the front buffer.
+     * @param cs
+     * @return the number of chars appended to the barge since its creation, cs included
+     * @throws IOException
+     */
+    long appendAndCount(CharSequence cs) throws IOException {
+        this.lock.lock();
+        try {
+            this.append(cs);
+            return this.appendedCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Format a record into the front buffer. If the front buffer is full, seal it and retry.
+     * Unlike append, a record larger than the buffer does not close the barge.
+     * @param formatter the formatter
+     * @param record the record
+     * @param <T> the type of the record
+     * @throws IOException
+     * @throws IllegalArgumentException if the formatted record is larger than the buffer
+     */
+    public <T> void append(RecordFormatter<? super T> formatter, T record) throws IOException {
+        this.lock.lock();
+        try {
+            this.checkOpen();
+            while (!this.formatToFront(formatter, record))
+                this.sealFrontBufferOrWait();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Format a record into the front buffer. If the front buffer is full, seal it if the other buffer is free and
+     * retry, else give up.
+     * @param formatter the formatter
+     * @param record the record
+     * @param <T> the type of the record
+     * @return true if the record was formatted, false if the barge is full or closed
+     * @throws IllegalArgumentException if the formatted record is larger than the buffer
+     */
+    public <T> boolean tryAppend(RecordFormatter<? super T> formatter, T record) {
+        this.lock.lock();
+        try {
+            if (this.closed || this.emergencyClose)
+                return false;
+
+            while (!this.formatToFront(formatter, record)) {
+                if (this.freeBuffer == null)
+                    return false;
+                this.sealFrontBuffer();
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private <T> boolean formatToFront(RecordFormatter<? super T> formatter, T record) {
+        int length = this.frontBuffer.length();
+        if (!this.frontBuffer.format(formatter, record))
+            return false;
+
+        this.appendedCount += this.frontBuffer.length() - length;
+        return true;
+    }
+
+    /**
+     * Write a char to the front buffer. If the front buffer is full, seal it and retry.
+     * @param c the char
+     * @throws IOException
+     */
+    public void write(char c) throws IOException {
+        this.lock.lock();
+        try {
+            this.checkOpen();
+            while (this.frontBuffer.acceptUpTo(1) == 0)
+                this.sealFrontBufferOrWait();
+            this.frontBuffer.append(c);
+            this.appendedCount++;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Write chars to the front buffer. Unlike append, the chars may be split between the buffers: if the front
+     * buffer is full, write what fits, seal it and write the rest.
+     * @param cbuf the chars
+     * @param off the offset of the first char
+     * @param len the number of chars
+     * @throws IOException
+     */
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        this.lock.lock();
+        try {
+            this.checkOpen();
+            while (len > 0) {
+                int room = this.frontBuffer.acceptUpTo(len);
+                if (room == 0) {
+                    this.sealFrontBufferOrWait();
+                } else {
+                    this.frontBuffer.append(cbuf, off, room);
+                    this.appendedCount += room;
+                    off += room;
+                    len -= room;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Write a part of a CharSequence to the front buffer. Unlike append, the chars may be split between the buffers.
+     * @param cs the CharSequence
+     * @param off the offset of the first char
+     * @param len the number of chars
+     * @throws IOException
+     */
+    public void write(CharSequence cs, int off, int len) throws IOException {
+        this.lock.lock();
+        try {
+            this.checkOpen();
+            while (len > 0) {
+                int room = this.frontBuffer.acceptUpTo(len);
+                if (room == 0) {
+                    this.sealFrontBufferOrWait();
+                } else {
+                    this.frontBuffer.append(cs, off, room);
+                    this.appendedCount += room;
+                    off += room;
+                    len -= room;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Decode bytes into the front buffer. The chars may be split between the buffers.
+     * @param decoder the decoder
+     * @param in the bytes. Undecoded bytes (e.g. the beginning of a multi-byte sequence) are left in the buffer.
+     * @param endOfInput true if there are no more bytes to decode. The decoder is then flushed.
+     * @throws IOException
+     */
+    void decode(CharsetDecoder decoder, ByteBuffer in, boolean endOfInput) throws IOException {
+        this.lock.lock();
+        try {
+            this.checkOpen();
+            boolean flushing = false;
+            while (true) {
+                int length = this.frontBuffer.length();
+                CoderResult result;
+                if (flushing)
+                    result = this.frontBuffer.flushDecoder(decoder);
+                else
+                    result = this.frontBuffer.decode(decoder, in, endOfInput);
+                this.appendedCount += this.frontBuffer.length() - length;
+                if (result.isOverflow()) {
+                    if (this.frontBuffer.isEmpty())
+                        throw new IllegalArgumentException("The buffer is too small");
+                    this.sealFrontBufferOrWait();
+                } else if (result.isUnderflow()) {
+                    if (!endOfInput || flushing)
+                        break;
+                    flushing = true;
+                } else {
+                    result.throwException();
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Transfer all the chars of a Readable to the barge. The chars are read straight into the free buffer, without
+     * holding the lock: the other producers may still append to the front buffer. When the free buffer is full, or
+     * after a read that returned less chars than requested, the front buffer is sealed and the free buffer becomes
+     * the front buffer.
+     *
+     * While the transfer holds the free buffer, the consumer can't seal the front buffer and the flushes are
+     * delayed. If the Readable is a Reader, the transfer waits for the next chars without holding the free buffer
+     * (see Reader.ready). Any other Readable that blocks on read (e.g. a slow Channel) delays the flushes until the
+     * read returns.
+     * @param readable the source
+     * @return the number of chars transferred
+     * @throws IOException
+     */
+    public long transferFrom(Readable readable) throws IOException {
+        Reader reader = readable instanceof Reader ? (Reader) readable : null;
+        long count = 0;
+        boolean more = true;
+        while (more) {
+            if (reader != null && !reader.ready()) {
+                int c = reader.read();
+                if (c == -1)
+                    break;
+                this.write((char) c);
+                count++;
+            }
+            Buffer buffer = this.takeFreeBuffer();
+            try {
+                more = buffer.fill(readable);
+            } catch (IOException e) {
+                this.returnFreeBuffer(buffer);
+                throw e;
+            }
+            count += this.replaceFrontBuffer(buffer);
+        }
+        return count;
+    }
+
+    /**
+     * Transfer all the chars of a file to the barge. The file is mapped in memory and decoded straight into the
+     * free buffer, without holding the lock (see transferFrom(Readable)).
+     * @param file the source
+     * @param charset the charset of the file
+     * @return the number of chars transferred
+     * @throws IOException
+     */
+    public long transferFrom(File file, Charset charset) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size, MAP_SIZE));
+            long count = 0;
+            boolean more = true;
+            while (more) {
+                Buffer buffer = this.takeFreeBuffer();
+                try {
+                    while (true) {
+                        boolean endOfInput = position + bytes.limit() == size;
+                        CoderResult result = buffer.decode(decoder, bytes, endOfInput);
+                        if (result.isOverflow()) {
+                            if (buffer.isEmpty())
+                                throw new IllegalArgumentException("The buffer is too small");
+                            break;
+                        } else if (endOfInput) {
+                            more = false;
+                            break;
+                        }
+                        position += bytes.position();
+                        bytes = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                Math.min(size - position, MAP_SIZE));
+                    }
+                } catch (IOException e) {
+                    this.returnFreeBuffer(buffer);
+                    throw e;
+                } catch (RuntimeException e) {
+                    this.returnFreeBuffer(buffer);
+                    throw e;
+                }
+                count += this.replaceFrontBuffer(buffer);
+            }
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Take the free buffer: the caller will fill it without holding the lock.
+     * @return the buffer
+     * @throws IOException if the thread was interrupted or the barge was closed
+     */
+    private Buffer takeFreeBuffer() throws IOException {
+        this.lock.lock();
+        try {
+            this.checkOpen();
+            while (this.freeBuffer == null) {
                 try {
-                    this.wait();
+                    this.bufferFreed.await();
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     throw new IOException(e);
                 }
+                this.checkOpen();
             }
-            this.frontBuffer.append(cs);
-        } catch (IllegalArgumentException e) {
-            this.emergencyClose = true;
-            this.notifyAll(); // notify before exit !!!
-            throw e;
+            Buffer buffer = this.freeBuffer;
+            this.freeBuffer = null;
+            return buffer;
+        } finally {
+            this.lock.unlock();
         }
-        this.notifyAll();
-        return this;
     }
 
-    private void swapBuffers() {
-        Buffer buf = this.backBuffer;
-        this.backBuffer = this.frontBuffer;
-        this.frontBuffer = buf;
-        this.notifyAll();
+    /**
+     * Give back a buffer taken by takeFreeBuffer, without its chars.
+     * @param buffer the buffer
+     */
+    private void returnFreeBuffer(Buffer buffer) {
+        this.lock.lock();
+        try {
+            buffer.clear();
+            this.freeBuffer = buffer;
+            this.bufferFreed.signalAll();
+            this.bufferSealed.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the front buffer by a buffer taken by takeFreeBuffer and filled. The previous front buffer is sealed
+     * if it is not empty, else it becomes the free buffer.
+     * @param buffer the filled buffer
+     * @return the number of chars of the buffer
+     * @throws IOException if the barge was closed
+     */
+    private int replaceFrontBuffer(Buffer buffer) throws IOException {
+        int length = buffer.length();
+        if (length == 0) {
+            this.returnFreeBuffer(buffer);
+            return 0;
+        }
+
+        this.lock.lock();
+        try {
+            if (this.closed || this.emergencyClose) {
+                this.returnFreeBuffer(buffer);
+                this.checkOpen();
+            }
+
+            if (this.frontBuffer.isEmpty())
+                this.freeBuffer = this.frontBuffer;
+            else
+                this.sealedBuffer = this.frontBuffer;
+            this.frontBuffer = buffer;
+            this.appendedCount += length;
+            this.bufferFreed.signalAll();
+            this.bufferSealed.signalAll();
+            return length;
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     /**
-     * Append a char to the front buffer. If the front buffer is full, swap buffers and retry.
+     * Append a char to the front buffer. If the front buffer is full, seal it and retry.
      * @param c
      * @return
      * @throws IOException
@@ -131,7 +534,7 @@ public class CharBarge implements Appendable {
     }
 
     /**
-     * Append a CharSequence subsequence to the front buffer. If the front buffer is full, swap buffers and retry.
+     * Append a CharSequence subsequence to the front buffer. If the front buffer is full, seal it and retry.
      * @param cs
      * @param start
      * @param end
@@ -144,18 +547,133 @@ public class CharBarge implements Appendable {
     }
 
     /**
-     * Close the barge.
+     * Close the barge: the producers can't append anymore, the consumer will flush the remaining chars.
+     */
+    public void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.bufferSealed.signalAll();
+            this.bufferFreed.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the barge is not closed or if there are chars left to flush
+     */
+    public boolean isOpen() {
+        this.lock.lock();
+        try {
+            return !this.emergencyClose && (!this.closed || this.sealedBuffer != null ||
+                    !this.frontBuffer.isEmpty() || this.freeBuffer == null);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     * @throws IOException if the barge was closed
+     */
+    private void checkOpen() throws IOException {
+        if (this.closed || this.emergencyClose)
+            throw new IOException("The barge is closed");
+    }
+
+    /**
+     * Seal the full front buffer if the other buffer is free, else wait for the consumer. Must be called with the
+     * lock held.
+     * @throws IOException if the thread was interrupted or the barge was closed
+     */
+    private void sealFrontBufferOrWait() throws IOException {
+        if (this.freeBuffer != null) {
+            this.sealFrontBuffer();
+            return;
+        }
+
+        try {
+            this.bufferFreed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        this.checkOpen();
+    }
+
+    /**
+     * Hand the front buffer to the consumer and replace it by the free buffer. Must be called with the lock held.
      */
-    public synchronized void close() {
-        this.frontBuffer.closeAfterNextFlush();
-        this.backBuffer.closeAfterNextFlush();
-        this.notifyAll();
+    private void sealFrontBuffer() {
+        this.sealedBuffer = this.frontBuffer;
+        this.frontBuffer = this.freeBuffer;
+        this.freeBuffer = null;
+        this.bufferSealed.signalAll();
     }
 
     /**
-     * @return true if one of the buffers is open
+     * Take the sealed buffer. If there is none and the barge is closed, a flush was requested or force is true,
+     * seal the front buffer first.
+     * @param force true to seal the front buffer instead of waiting
+     * @param timeout the maximum time to wait, in nanoseconds, or a negative value to wait without limit
+     * @return the sealed buffer, or null if there is nothing to flush
+     * @throws IOException if the thread was interrupted
      */
-    public synchronized boolean isOpen() {
-        return !this.emergencyClose && (this.frontBuffer.isOpen() || this.backBuffer.isOpen());
+    private Buffer takeSealedBuffer(boolean force, long timeout) throws IOException {
+        this.lock.lock();
+        try {
+            while (!this.emergencyClose) {
+                if (this.sealedBuffer != null) {
+                    Buffer buffer = this.sealedBuffer;
+                    this.sealedBuffer = null;
+                    return buffer;
+                }
+
+                if ((force || this.closed || this.flushRequested) && this.freeBuffer != null) {
+                    this.flushRequested = false;
+                    if (this.frontBuffer.isEmpty())
+                        return null;
+                    this.sealFrontBuffer();
+                } else if (force) {
+                    return null;
+                } else if (timeout == 0) {
+                    return null;
+                } else {
+                    try {
+                        if (timeout < 0)
+                            this.bufferSealed.await();
+                        else
+                            timeout = Math.max(this.bufferSealed.awaitNanos(timeout), 0);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                }
+            }
+            return null;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Flush a sealed buffer without holding the lock, then free it.
+     * @param buffer the buffer
+     * @param appendable the destination
+     * @throws IOException
+     */
+    private void flushAndFree(Buffer buffer, Appendable appendable) throws IOException {
+        try {
+            buffer.flushTo(appendable);
+        } finally {
+            this.lock.lock();
+            try {
+                this.freeBuffer = buffer;
+                this.bufferFreed.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
     }
 }
@@ -0,0 +1,97 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A CharBargeOutputStream is an OutputStream that decodes the bytes straight into the front buffer of a barge.
+ * The bytes are decoded on every write: only an incomplete multi-byte sequence is kept until the next write.
+ * flush asks the consumer to flush the barge, close closes the barge.
+ */
+public class CharBargeOutputStream extends OutputStream {
+    private static final int BYTES_SIZE = 8192;
+
+    private CharBarge barge;
+    private CharsetDecoder decoder;
+    private ByteBuffer bytes;
+    private boolean closed;
+
+    /**
+     * Create a new CharBargeOutputStream
+     * @param barge the barge
+     * @param charset the charset used to decode the bytes
+     */
+    public CharBargeOutputStream(CharBarge barge, Charset charset) {
+        this.barge = barge;
+        this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(BYTES_SIZE);
+        this.closed = false;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        this.bytes.put((byte) b);
+        this.decodeBytes(false);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+
+        while (len > 0) {
+            int n = Math.min(len, this.bytes.remaining());
+            this.bytes.put(b, off, n);
+            this.decodeBytes(false);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (this.closed)
+            return;
+
+        this.barge.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed)
+            return;
+
+        this.closed = true;
+        this.decodeBytes(true);
+        this.barge.close();
+    }
+
+    private void decodeBytes(boolean endOfInput) throws IOException {
+        this.bytes.flip();
+        this.barge.decode(this.decoder, this.bytes, endOfInput);
+        this.bytes.compact();
+    }
+}
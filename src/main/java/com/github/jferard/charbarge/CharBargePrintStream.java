@@ -0,0 +1,234 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+
+/**
+ * A CharBargePrintStream is a PrintStream that writes its chars straight into the front buffer of a barge, e.g. to
+ * replace System.out. The print, println and append methods do not encode the chars: only the bytes written with
+ * write go through a CharBargeOutputStream, that decodes them.
+ *
+ * If autoFlush is true, println asks the consumer to flush the barge. As in PrintStream, the methods do not throw
+ * IOException: use checkError.
+ */
+public class CharBargePrintStream extends PrintStream {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private CharBarge barge;
+    private boolean autoFlush;
+
+    /**
+     * Create a new CharBargePrintStream, without auto flush
+     * @param barge the barge
+     * @param charset the charset of the bytes written
+     * @throws UnsupportedEncodingException
+     */
+    public CharBargePrintStream(CharBarge barge, Charset charset) throws UnsupportedEncodingException {
+        this(barge, charset, false);
+    }
+
+    /**
+     * Create a new CharBargePrintStream
+     * @param barge the barge
+     * @param charset the charset of the bytes written
+     * @param autoFlush true to ask for a flush after every println and every array of bytes written
+     * @throws UnsupportedEncodingException
+     */
+    public CharBargePrintStream(CharBarge barge, Charset charset, boolean autoFlush)
+            throws UnsupportedEncodingException {
+        super(new CharBargeOutputStream(barge, charset), autoFlush, charset.name());
+        this.barge = barge;
+        this.autoFlush = autoFlush;
+    }
+
+    @Override
+    public void print(boolean b) {
+        this.writeChars(String.valueOf(b));
+    }
+
+    @Override
+    public void print(char c) {
+        try {
+            this.barge.write(c);
+        } catch (IOException e) {
+            this.setError();
+        }
+    }
+
+    @Override
+    public void print(int i) {
+        this.writeChars(String.valueOf(i));
+    }
+
+    @Override
+    public void print(long l) {
+        this.writeChars(String.valueOf(l));
+    }
+
+    @Override
+    public void print(float f) {
+        this.writeChars(String.valueOf(f));
+    }
+
+    @Override
+    public void print(double d) {
+        this.writeChars(String.valueOf(d));
+    }
+
+    @Override
+    public void print(char[] s) {
+        try {
+            this.barge.write(s, 0, s.length);
+        } catch (IOException e) {
+            this.setError();
+        }
+    }
+
+    @Override
+    public void print(String s) {
+        this.writeChars(s == null ? "null" : s);
+    }
+
+    @Override
+    public void print(Object obj) {
+        this.writeChars(String.valueOf(obj));
+    }
+
+    @Override
+    public void println() {
+        this.newLine();
+    }
+
+    @Override
+    public void println(boolean x) {
+        synchronized (this) {
+            this.print(x);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public void println(char x) {
+        synchronized (this) {
+            this.print(x);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public void println(int x) {
+        synchronized (this) {
+            this.print(x);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public void println(long x) {
+        synchronized (this) {
+            this.print(x);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public void println(float x) {
+        synchronized (this) {
+            this.print(x);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public void println(double x) {
+        synchronized (this) {
+            this.print(x);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public void println(char[] x) {
+        synchronized (this) {
+            this.print(x);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public void println(String x) {
+        synchronized (this) {
+            this.print(x);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public void println(Object x) {
+        String s = String.valueOf(x);
+        synchronized (this) {
+            this.print(s);
+            this.newLine();
+        }
+    }
+
+    @Override
+    public PrintStream append(CharSequence csq) {
+        CharSequence cs = csq == null ? "null" : csq;
+        this.writeChars(cs, 0, cs.length());
+        return this;
+    }
+
+    @Override
+    public PrintStream append(CharSequence csq, int start, int end) {
+        CharSequence cs = csq == null ? "null" : csq;
+        if (start < 0 || start > end || end > cs.length())
+            throw new IndexOutOfBoundsException();
+        this.writeChars(cs, start, end - start);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(char c) {
+        this.print(c);
+        return this;
+    }
+
+    private void newLine() {
+        this.writeChars(LINE_SEPARATOR);
+        if (this.autoFlush)
+            this.barge.flush();
+    }
+
+    private void writeChars(String s) {
+        this.writeChars(s, 0, s.length());
+    }
+
+    private void writeChars(CharSequence cs, int off, int len) {
+        try {
+            this.barge.write(cs, off, len);
+        } catch (IOException e) {
+            this.setError();
+        }
+    }
+}
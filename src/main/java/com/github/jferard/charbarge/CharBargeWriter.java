@@ -0,0 +1,88 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A CharBargeWriter is a Writer that writes the chars straight into the front buffer of a barge.
+ * flush asks the consumer to flush the barge, close closes the barge.
+ */
+public class CharBargeWriter extends Writer {
+    private static final String NULL = "null";
+
+    private CharBarge barge;
+
+    /**
+     * Create a new CharBargeWriter
+     * @param barge the barge
+     */
+    public CharBargeWriter(CharBarge barge) {
+        this.barge = barge;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        this.barge.write((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        this.barge.write(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        this.barge.write(str, off, len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        CharSequence cs = csq == null ? NULL : csq;
+        this.barge.write(cs, 0, cs.length());
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        CharSequence cs = csq == null ? NULL : csq;
+        if (start < 0 || end > cs.length() || start > end)
+            throw new IndexOutOfBoundsException();
+
+        this.barge.write(cs, start, end - start);
+        return this;
+    }
+
+    @Override
+    public Writer append(char c) throws IOException {
+        this.barge.write(c);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        this.barge.flush();
+    }
+
+    @Override
+    public void close() {
+        this.barge.close();
+    }
+}
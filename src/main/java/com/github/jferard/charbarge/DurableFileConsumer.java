@@ -0,0 +1,125 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * A DurableFileConsumer writes the content of a barge to a FileChannel, and forces the channel once per flush
+ * (group commit): the records of many producers share a single fsync.
+ *
+ * Use appendDurable to get a Future that is done when the record is on the storage device. If the consumer stops
+ * on an I/O error, the barge is closed and every future, pending or new, fails with that error.
+ */
+public class DurableFileConsumer extends Thread {
+    private static final int BYTES_SIZE = 8192;
+
+    private CharBarge barge;
+    private FileChannel channel;
+    private ChannelAppendable appendable;
+    private final List<DurableFuture> pending;
+    private long forcedCount;
+    /** the error that stopped the consumer, guarded by pending */
+    private IOException failure;
+
+    /**
+     * Create a new DurableFileConsumer
+     * @param barge the barge
+     * @param channel the destination channel
+     * @param charset the charset used to encode the chars
+     */
+    public DurableFileConsumer(CharBarge barge, FileChannel channel, Charset charset) {
+        this.barge = barge;
+        this.channel = channel;
+        this.appendable = new ChannelAppendable(channel, charset, BYTES_SIZE);
+        this.pending = new ArrayList<DurableFuture>();
+        this.forcedCount = 0;
+    }
+
+    /**
+     * Append a CharSequence to the barge and ask for a flush.
+     * @param cs
+     * @return a Future that is done when the CharSequence is on the storage device
+     * @throws IOException
+     */
+    public Future<Void> appendDurable(CharSequence cs) throws IOException {
+        long charCount = this.barge.appendAndCount(cs);
+        DurableFuture future = new DurableFuture(charCount);
+        synchronized (this.pending) {
+            if (charCount <= this.forcedCount)
+                future.succeed();
+            else if (this.failure != null)
+                future.fail(this.failure);
+            else
+                this.pending.add(future);
+        }
+        this.barge.flush();
+        return future;
+    }
+
+    public void run() {
+        try {
+            while (this.barge.isOpen()) {
+                this.barge.flushTo(this.appendable);
+                this.force();
+            }
+            this.appendable.end();
+            this.force();
+            this.failPending(new IOException("The barge was closed before the chars were written"));
+        } catch (IOException e) {
+            this.failPending(e);
+            this.barge.close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void force() throws IOException {
+        long charCount = this.appendable.getCharCount();
+        if (charCount == this.forcedCount)
+            return;
+
+        this.channel.force(false);
+        synchronized (this.pending) {
+            this.forcedCount = charCount;
+            Iterator<DurableFuture> it = this.pending.iterator();
+            while (it.hasNext()) {
+                DurableFuture future = it.next();
+                if (future.getCharCount() <= charCount) {
+                    future.succeed();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void failPending(IOException e) {
+        synchronized (this.pending) {
+            this.failure = e;
+            for (DurableFuture future : this.pending)
+                future.fail(e);
+            this.pending.clear();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.util.concurrent.FutureTask;
+
+/**
+ * A DurableFuture is done when the chars of the barge, up to a given count, are on the storage device.
+ */
+class DurableFuture extends FutureTask<Void> {
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private long charCount;
+
+    /**
+     * Create a new DurableFuture
+     * @param charCount the number of chars that have to be durable
+     */
+    public DurableFuture(long charCount) {
+        super(NOTHING, null);
+        this.charCount = charCount;
+    }
+
+    /**
+     * @return the number of chars that have to be durable
+     */
+    public long getCharCount() {
+        return this.charCount;
+    }
+
+    /**
+     * Mark the future as done: the chars are on the storage device.
+     */
+    public void succeed() {
+        this.set(null);
+    }
+
+    /**
+     * Mark the future as done: the chars could not be written.
+     * @param t the cause
+     */
+    public void fail(Throwable t) {
+        this.setException(t);
+    }
+}
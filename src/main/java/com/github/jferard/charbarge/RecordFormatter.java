@@ -0,0 +1,36 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.nio.CharBuffer;
+
+/**
+ * A RecordFormatter formats a record straight into the front buffer of a barge.
+ * @param <T> the type of the records
+ */
+public interface RecordFormatter<T> {
+    /**
+     * Format a record. The barge calls this method under its lock: the formatter may reuse its internal state.
+     * @param record the record
+     * @param out the buffer.
+     * @throws java.nio.BufferOverflowException if there is no room left in the buffer. The barge will then remove the
+     * partial record and retry with an empty buffer.
+     */
+    void format(T record, CharBuffer out);
+}
@@ -0,0 +1,118 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A RollingFileConsumer writes the content of a barge to a file. When the file is larger than a given size, it is
+ * renamed to file.1 (file.1 to file.2, ...) and a new file is created.
+ *
+ * The file is rolled between two flushes: a record appended to the barge is never split between two files.
+ *
+ * If the consumer stops on an I/O error, the barge is closed: the producers get an IOException instead of waiting
+ * forever for a free buffer.
+ */
+public class RollingFileConsumer extends Thread {
+    private static final int BYTES_SIZE = 8192;
+
+    private CharBarge barge;
+    private File file;
+    private Charset charset;
+    private long maxBytes;
+    private int maxBackups;
+    private FileChannel channel;
+    private ChannelAppendable appendable;
+    private long fileStart;
+
+    /**
+     * Create a new RollingFileConsumer
+     * @param barge the barge
+     * @param file the file. If the file exists, the chars are appended.
+     * @param charset the charset used to encode the chars
+     * @param maxBytes the size above which the file is rolled
+     * @param maxBackups the number of rolled files to keep
+     */
+    public RollingFileConsumer(CharBarge barge, File file, Charset charset, long maxBytes, int maxBackups) {
+        this.barge = barge;
+        this.file = file;
+        this.charset = charset;
+        this.maxBytes = maxBytes;
+        this.maxBackups = maxBackups;
+    }
+
+    public void run() {
+        try {
+            this.open(true);
+            try {
+                while (this.barge.isOpen()) {
+                    this.barge.flushTo(this.appendable);
+                    if (this.appendable.getByteCount() - this.fileStart >= this.maxBytes)
+                        this.roll();
+                }
+                this.appendable.end();
+            } finally {
+                this.channel.close();
+            }
+        } catch (IOException e) {
+            this.barge.close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Open the file
+     * @param append true to keep the current content of the file
+     * @throws IOException
+     */
+    private void open(boolean append) throws IOException {
+        this.channel = new FileOutputStream(this.file, append).getChannel();
+        if (this.appendable == null)
+            this.appendable = new ChannelAppendable(this.channel, this.charset, BYTES_SIZE);
+        else
+            this.appendable.setChannel(this.channel);
+        this.fileStart = this.appendable.getByteCount() - this.channel.size();
+    }
+
+    private void roll() throws IOException {
+        this.channel.close();
+        if (this.maxBackups > 0) {
+            File oldest = this.backup(this.maxBackups);
+            if (oldest.exists() && !oldest.delete())
+                throw new IOException("Can't delete " + oldest);
+
+            for (int i = this.maxBackups - 1; i >= 1; i--) {
+                File backup = this.backup(i);
+                if (backup.exists() && !backup.renameTo(this.backup(i + 1)))
+                    throw new IOException("Can't rename " + backup);
+            }
+            if (!this.file.renameTo(this.backup(1)))
+                throw new IOException("Can't rename " + this.file);
+        }
+        this.open(false);
+    }
+
+    private File backup(int i) {
+        return new File(this.file.getPath() + "." + i);
+    }
+}
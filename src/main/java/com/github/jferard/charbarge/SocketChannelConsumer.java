@@ -0,0 +1,239 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * A SocketChannelConsumer encodes the content of a barge and writes it to a socket. Once a sealed buffer is
+ * available, the consumer also takes, without waiting, the buffers filled in the meantime (the front buffer
+ * included): all of them are encoded into byte buffers that are sent together with a single gathering write.
+ *
+ * If the connection drops, the unsent byte buffers are kept and sent again after a reconnection: the consumer tries
+ * to reconnect every retryDelay, even if the producers are idle. A connection attempt to an InetSocketAddress times
+ * out after 5 seconds. The bytes already accepted by the socket before the drop was detected are lost. When more than
+ * maxUnsent byte buffers are waiting, the consumer stops flushing the barge (and thus blocks the producers) until
+ * the connection is back.
+ *
+ * The address may be any address accepted by SocketChannel.open, e.g. an InetSocketAddress.
+ */
+public class SocketChannelConsumer extends Thread {
+    private static final int BYTES_SIZE = 8192;
+    private static final int MAX_GATHER = 16;
+    private static final int MAX_UNSENT = 1024;
+    private static final long RETRY_DELAY = 1000;
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private CharBarge barge;
+    private SocketAddress address;
+    private int maxUnsent;
+    private long retryDelay;
+    private final Deque<ByteBuffer> unsent;
+    private final Deque<ByteBuffer> pool;
+    private final ByteBuffer[] gathered;
+    private final StreamEncoder encoder;
+    private final Appendable appendable;
+    private SocketChannel channel;
+    private long nextAttempt;
+
+    /**
+     * Create a new SocketChannelConsumer
+     * @param barge the barge
+     * @param address the address of the destination socket
+     * @param charset the charset used to encode the chars
+     */
+    public SocketChannelConsumer(CharBarge barge, SocketAddress address, Charset charset) {
+        this(barge, address, charset, MAX_UNSENT, RETRY_DELAY);
+    }
+
+    /**
+     * Create a new SocketChannelConsumer
+     * @param barge the barge
+     * @param address the address of the destination socket
+     * @param charset the charset used to encode the chars
+     * @param maxUnsent the number of byte buffers kept before the consumer blocks on reconnection
+     * @param retryDelay the delay between two connection attempts, in milliseconds
+     */
+    public SocketChannelConsumer(CharBarge barge, SocketAddress address, Charset charset, int maxUnsent,
+                                 long retryDelay) {
+        this.barge = barge;
+        this.address = address;
+        this.maxUnsent = maxUnsent;
+        this.retryDelay = retryDelay;
+        this.unsent = new ArrayDeque<ByteBuffer>();
+        this.pool = new ArrayDeque<ByteBuffer>();
+        this.gathered = new ByteBuffer[MAX_GATHER];
+        this.encoder = new StreamEncoder(charset, this.newBytes()) {
+            @Override
+            protected ByteBuffer drain(ByteBuffer bytes) {
+                SocketChannelConsumer consumer = SocketChannelConsumer.this;
+                bytes.flip();
+                consumer.unsent.addLast(bytes);
+                return consumer.newBytes();
+            }
+        };
+        this.appendable = new EncodingAppendable();
+        this.nextAttempt = 0;
+    }
+
+    public void run() {
+        try {
+            while (this.barge.isOpen()) {
+                boolean flushed = true;
+                if (this.unsent.isEmpty())
+                    this.barge.flushTo(this.appendable);
+                else // don't wait for the producers to retry
+                    flushed = this.barge.flushTo(this.appendable, this.nextAttempt - System.currentTimeMillis());
+                for (int i = 1; flushed && i < MAX_GATHER && this.barge.flushOnceTo(this.appendable); i++) {
+                    // take the buffers filled in the meantime
+                }
+                this.encoder.drain();
+                this.send(this.maxUnsent);
+            }
+            this.encoder.end();
+            this.encoder.drain();
+            this.send(0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            this.disconnect();
+        }
+    }
+
+    /**
+     * Try to send the unsent buffers. After a failure, the next attempt is made retryDelay later: if there are at
+     * most maxKept buffers left, the consumer goes on flushing the barge meanwhile, else it waits.
+     * @param maxKept the number of buffers that may be kept on failure
+     * @throws IOException if the thread was interrupted while waiting for a retry
+     */
+    private void send(int maxKept) throws IOException {
+        while (true) {
+            long delay = this.nextAttempt - System.currentTimeMillis();
+            if (delay > 0) {
+                if (this.unsent.size() <= maxKept)
+                    return;
+                this.waitBeforeRetry(delay);
+            }
+            try {
+                this.writeUnsent();
+                return;
+            } catch (IOException e) {
+                this.disconnect();
+                this.nextAttempt = System.currentTimeMillis() + this.retryDelay;
+            }
+        }
+    }
+
+    private void writeUnsent() throws IOException {
+        if (this.unsent.isEmpty())
+            return;
+
+        if (this.channel == null)
+            this.connect();
+
+        while (!this.unsent.isEmpty()) {
+            int length = 0;
+            Iterator<ByteBuffer> it = this.unsent.iterator();
+            while (length < MAX_GATHER && it.hasNext())
+                this.gathered[length++] = it.next();
+
+            this.channel.write(this.gathered, 0, length);
+            while (!this.unsent.isEmpty() && !this.unsent.peekFirst().hasRemaining())
+                this.recycle(this.unsent.pollFirst());
+        }
+    }
+
+    /**
+     * Connect to the address, with a timeout if the address is an InetSocketAddress.
+     * @throws IOException
+     */
+    private void connect() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            if (this.address instanceof InetSocketAddress)
+                channel.socket().connect(this.address, CONNECT_TIMEOUT);
+            else
+                channel.connect(this.address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.channel = channel;
+    }
+
+    private void waitBeforeRetry(long delay) throws IOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private void disconnect() {
+        if (this.channel == null)
+            return;
+
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // pass: the connection is lost anyway
+        }
+        this.channel = null;
+    }
+
+    private ByteBuffer newBytes() {
+        ByteBuffer bytes = this.pool.pollFirst();
+        if (bytes == null)
+            bytes = ByteBuffer.allocateDirect(BYTES_SIZE);
+        return bytes;
+    }
+
+    private void recycle(ByteBuffer bytes) {
+        bytes.clear();
+        this.pool.addFirst(bytes);
+    }
+
+    /**
+     * Encodes the flushed chars into byte buffers that are queued to be sent.
+     */
+    private class EncodingAppendable implements Appendable {
+        public Appendable append(CharSequence cs) throws IOException {
+            SocketChannelConsumer.this.encoder.encode(cs);
+            return this;
+        }
+
+        public Appendable append(CharSequence cs, int start, int end) throws IOException {
+            return this.append(CharBuffer.wrap(cs, start, end));
+        }
+
+        public Appendable append(char c) throws IOException {
+            return this.append(String.valueOf(c));
+        }
+    }
+}
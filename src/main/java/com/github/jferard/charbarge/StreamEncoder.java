@@ -0,0 +1,107 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A StreamEncoder encodes a stream of chars that arrives in several chunks, e.g. the buffers flushed by a barge.
+ * The state of the encoder is kept between two chunks: a surrogate pair split between two chunks is encoded as
+ * one char, not replaced.
+ *
+ * The bytes are encoded into a ByteBuffer. When the ByteBuffer is full, or when drain is called, it is passed to
+ * drain(ByteBuffer), that returns the ByteBuffer to use next.
+ */
+abstract class StreamEncoder {
+    private final CharsetEncoder encoder;
+    /** the last chars of a chunk that were not encoded yet (a high surrogate) */
+    private final CharBuffer carry;
+    private ByteBuffer bytes;
+
+    /**
+     * Create a new StreamEncoder
+     * @param charset the charset used to encode the chars
+     * @param bytes the first byte buffer
+     */
+    StreamEncoder(Charset charset, ByteBuffer bytes) {
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.carry = CharBuffer.allocate(2);
+        this.bytes = bytes;
+    }
+
+    /**
+     * Encode a chunk of the stream. If the CharSequence is a CharBuffer, its position is moved to its limit.
+     * @param cs the chunk
+     * @throws IOException
+     */
+    public void encode(CharSequence cs) throws IOException {
+        CharBuffer in = cs instanceof CharBuffer ? (CharBuffer) cs : CharBuffer.wrap(cs);
+        while (this.carry.position() > 0 && in.hasRemaining()) {
+            this.carry.put(in.get());
+            this.carry.flip();
+            this.encode(this.carry, false);
+            this.carry.compact();
+        }
+        this.encode(in, false);
+        this.carry.put(in);
+    }
+
+    /**
+     * End the stream: encode the chars left and flush the encoder. The encoder is then ready for a new stream.
+     * The bytes are not drained.
+     * @throws IOException
+     */
+    public void end() throws IOException {
+        this.carry.flip();
+        this.encode(this.carry, true);
+        this.carry.clear();
+        while (this.encoder.flush(this.bytes) == CoderResult.OVERFLOW)
+            this.bytes = this.drain(this.bytes);
+        this.encoder.reset();
+    }
+
+    /**
+     * Drain the bytes encoded, if any.
+     * @throws IOException
+     */
+    public void drain() throws IOException {
+        if (this.bytes.position() > 0)
+            this.bytes = this.drain(this.bytes);
+    }
+
+    /**
+     * Consume the encoded bytes.
+     * @param bytes the byte buffer, in write mode
+     * @return the byte buffer to use next, empty, in write mode
+     * @throws IOException
+     */
+    protected abstract ByteBuffer drain(ByteBuffer bytes) throws IOException;
+
+    private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+        while (this.encoder.encode(in, this.bytes, endOfInput) == CoderResult.OVERFLOW)
+            this.bytes = this.drain(this.bytes);
+    }
+}
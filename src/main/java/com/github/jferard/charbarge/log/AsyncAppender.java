@@ -0,0 +1,114 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge.log;
+
+import com.github.jferard.charbarge.CharBarge;
+import com.github.jferard.charbarge.RecordFormatter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An AsyncAppender formats log events straight into the front buffer of a barge. A consumer (e.g. a
+ * RollingFileConsumer) writes the barge in the background.
+ *
+ * The appender never throws: an event that can't be appended (barge full with the DISCARD policy, event larger than
+ * the buffer, interrupted thread, closed barge, failure of the formatter) is counted as discarded.
+ */
+public class AsyncAppender {
+    private CharBarge barge;
+    private RecordFormatter<? super LogEvent> formatter;
+    private FullBargePolicy policy;
+    private final ThreadLocal<LogEvent> events;
+    private final AtomicLong discardedCount;
+
+    /**
+     * Create a new AsyncAppender
+     * @param barge the barge
+     * @param formatter the formatter, e.g. a LogFormatter
+     * @param policy what to do when the barge is full
+     */
+    public AsyncAppender(CharBarge barge, RecordFormatter<? super LogEvent> formatter, FullBargePolicy policy) {
+        this.barge = barge;
+        this.formatter = formatter;
+        this.policy = policy;
+        this.events = new ThreadLocal<LogEvent>() {
+            @Override
+            protected LogEvent initialValue() {
+                return new LogEvent();
+            }
+        };
+        this.discardedCount = new AtomicLong();
+    }
+
+    /**
+     * Append a log event
+     * @param level the level
+     * @param loggerName the name of the logger
+     * @param message the message
+     * @return true if the event was appended, false if it was discarded
+     */
+    public boolean append(Level level, String loggerName, CharSequence message) {
+        return this.append(level, loggerName, message, null);
+    }
+
+    /**
+     * Append a log event
+     * @param level the level
+     * @param loggerName the name of the logger
+     * @param message the message
+     * @param throwable the throwable, or null
+     * @return true if the event was appended, false if it was discarded
+     */
+    public boolean append(Level level, String loggerName, CharSequence message, Throwable throwable) {
+        LogEvent event = this.events.get();
+        event.set(System.currentTimeMillis(), level, Thread.currentThread().getName(), loggerName, message,
+                throwable);
+        try {
+            if (this.policy == FullBargePolicy.BLOCK) {
+                this.barge.append(this.formatter, event);
+                return true;
+            } else if (this.barge.tryAppend(this.formatter, event)) {
+                return true;
+            }
+        } catch (IOException e) {
+            // pass: the thread was interrupted or the barge was closed
+        } catch (RuntimeException e) {
+            // pass: the event is larger than the buffer or the formatter failed
+        } finally {
+            event.clear();
+        }
+        this.discardedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return the number of discarded events
+     */
+    public long getDiscardedCount() {
+        return this.discardedCount.get();
+    }
+
+    /**
+     * Close the barge. The consumer will write the last events.
+     */
+    public void close() {
+        this.barge.close();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge.log;
+
+/**
+ * A LogEvent is a mutable log event. The AsyncAppender reuses one event per thread, to avoid allocations.
+ */
+public class LogEvent {
+    private long timeMillis;
+    private Level level;
+    private String threadName;
+    private String loggerName;
+    private CharSequence message;
+    private Throwable throwable;
+
+    /**
+     * Set the fields of the event
+     * @param timeMillis the time of the event
+     * @param level the level
+     * @param threadName the name of the thread
+     * @param loggerName the name of the logger
+     * @param message the message
+     * @param throwable the throwable, or null
+     */
+    public void set(long timeMillis, Level level, String threadName, String loggerName, CharSequence message,
+                    Throwable throwable) {
+        this.timeMillis = timeMillis;
+        this.level = level;
+        this.threadName = threadName;
+        this.loggerName = loggerName;
+        this.message = message;
+        this.throwable = throwable;
+    }
+
+    /**
+     * Clear the references held by the event.
+     */
+    public void clear() {
+        this.set(0, null, null, null, null, null);
+    }
+
+    public long getTimeMillis() {
+        return this.timeMillis;
+    }
+
+    public Level getLevel() {
+        return this.level;
+    }
+
+    public String getThreadName() {
+        return this.threadName;
+    }
+
+    public String getLoggerName() {
+        return this.loggerName;
+    }
+
+    public CharSequence getMessage() {
+        return this.message;
+    }
+
+    public Throwable getThrowable() {
+        return this.throwable;
+    }
+}
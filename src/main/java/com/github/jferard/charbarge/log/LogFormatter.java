@@ -0,0 +1,238 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge.log;
+
+import com.github.jferard.charbarge.RecordFormatter;
+
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * A LogFormatter formats a log event as: "yyyy-MM-dd HH:mm:ss.SSS LEVEL [thread] logger - message", followed by
+ * the stack trace of the throwable, if any.
+ *
+ * The formatter does not allocate any object, except to format a throwable: the date and time of the current minute
+ * are cached, the seconds and the milliseconds are written digit by digit.
+ *
+ * If the event does not fit in an empty buffer, the stack trace is truncated and ends with "... N more", where N is
+ * the number of lines left out. As in Throwable.printStackTrace, a circular cause is printed once.
+ */
+public class LogFormatter implements RecordFormatter<LogEvent> {
+    private static final long MINUTE = 60 * 1000L;
+    private static final char[] NULL = "null".toCharArray();
+    private static final char[] SEPARATOR = " - ".toCharArray();
+    private static final char[] AT = "\tat ".toCharArray();
+    private static final char[] CAUSED_BY = "Caused by: ".toCharArray();
+    private static final char[] CIRCULAR_REFERENCE = "\t[CIRCULAR REFERENCE: ".toCharArray();
+    private static final char[] MORE_START = "\t... ".toCharArray();
+    private static final char[] MORE_END = " more\n".toCharArray();
+    private static final int MORE_LENGTH = MORE_START.length + 10 + MORE_END.length;
+
+    private final Calendar calendar;
+    private final char[] minutePrefix;
+    private long minuteStart;
+
+    /**
+     * Create a new LogFormatter for the default time zone
+     */
+    public LogFormatter() {
+        this(TimeZone.getDefault());
+    }
+
+    /**
+     * Create a new LogFormatter
+     * @param timeZone the time zone of the dates
+     */
+    public LogFormatter(TimeZone timeZone) {
+        this.calendar = Calendar.getInstance(timeZone);
+        this.minutePrefix = "yyyy-MM-dd HH:mm:".toCharArray();
+        this.minuteStart = Long.MIN_VALUE;
+    }
+
+    @Override
+    public void format(LogEvent event, CharBuffer out) {
+        int start = out.position();
+        long timeMillis = event.getTimeMillis();
+        if (timeMillis < this.minuteStart || timeMillis >= this.minuteStart + MINUTE)
+            this.updateMinutePrefix(timeMillis);
+
+        int millisInMinute = (int) (timeMillis - this.minuteStart);
+        out.put(this.minutePrefix);
+        putInt(out, millisInMinute / 1000, 2);
+        out.put('.');
+        putInt(out, millisInMinute % 1000, 3);
+        out.put(' ');
+        out.put(event.getLevel().getLabel());
+        out.put(' ').put('[');
+        putChars(out, event.getThreadName());
+        out.put(']').put(' ');
+        putChars(out, event.getLoggerName());
+        out.put(SEPARATOR);
+        putChars(out, event.getMessage());
+        out.put('\n');
+
+        Throwable throwable = event.getThrowable();
+        if (throwable != null) {
+            int traceStart = out.position();
+            try {
+                putThrowable(out, throwable, false);
+            } catch (BufferOverflowException e) {
+                if (start > 0)
+                    throw e; // the barge will retry with an empty buffer
+
+                out.position(traceStart);
+                putThrowable(out, throwable, true);
+            }
+        }
+    }
+
+    private void updateMinutePrefix(long timeMillis) {
+        this.calendar.setTimeInMillis(timeMillis);
+        this.calendar.set(Calendar.SECOND, 0);
+        this.calendar.set(Calendar.MILLISECOND, 0);
+        this.minuteStart = this.calendar.getTimeInMillis();
+        putInt(this.minutePrefix, 0, this.calendar.get(Calendar.YEAR), 4);
+        putInt(this.minutePrefix, 5, this.calendar.get(Calendar.MONTH) + 1, 2);
+        putInt(this.minutePrefix, 8, this.calendar.get(Calendar.DAY_OF_MONTH), 2);
+        putInt(this.minutePrefix, 11, this.calendar.get(Calendar.HOUR_OF_DAY), 2);
+        putInt(this.minutePrefix, 14, this.calendar.get(Calendar.MINUTE), 2);
+    }
+
+    /**
+     * Write the digits of a non negative int, padded with zeros
+     * @param out the destination
+     * @param value the int
+     * @param width the number of digits
+     */
+    static void putInt(CharBuffer out, int value, int width) {
+        if (out.remaining() < width)
+            throw new BufferOverflowException();
+
+        int position = out.position();
+        for (int i = width - 1; i >= 0; i--) {
+            out.put(position + i, (char) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(position + width);
+    }
+
+    private static void putInt(char[] chars, int offset, int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            chars[offset + i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Write the chars of a CharSequence without creating a String.
+     * @param out the destination
+     * @param cs the CharSequence, or null
+     */
+    static void putChars(CharBuffer out, CharSequence cs) {
+        if (cs == null) {
+            out.put(NULL);
+        } else if (cs instanceof String) {
+            out.put((String) cs);
+        } else {
+            int length = cs.length();
+            for (int i = 0; i < length; i++)
+                out.put(cs.charAt(i));
+        }
+    }
+
+    /**
+     * Write the stack trace of a throwable and of its causes.
+     * @param out the destination
+     * @param throwable the throwable
+     * @param truncate if true, stop before the buffer is full and write "... N more"
+     */
+    private static void putThrowable(CharBuffer out, Throwable throwable, boolean truncate) {
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        Throwable t = throwable;
+        while (t != null) {
+            if (!seen.add(t)) {
+                if (!putLine(out, CIRCULAR_REFERENCE, t.toString() + "]", truncate))
+                    putMore(out, 1);
+                return;
+            }
+            StackTraceElement[] elements = t.getStackTrace();
+            if (!putLine(out, t == throwable ? null : CAUSED_BY, t.toString(), truncate)) {
+                putMore(out, countLines(t, 0, seen));
+                return;
+            }
+            for (int i = 0; i < elements.length; i++) {
+                if (!putLine(out, AT, elements[i].toString(), truncate)) {
+                    putMore(out, countLines(t, i + 1, seen));
+                    return;
+                }
+            }
+            t = t.getCause();
+        }
+    }
+
+    /**
+     * Write a line of a stack trace
+     * @param out the destination
+     * @param prefix the prefix, or null
+     * @param text the text
+     * @param truncate if true, keep room for "... N more"
+     * @return false if the line was not written
+     */
+    private static boolean putLine(CharBuffer out, char[] prefix, String text, boolean truncate) {
+        int prefixLength = prefix == null ? 0 : prefix.length;
+        if (truncate && prefixLength + text.length() + 1 + MORE_LENGTH > out.remaining())
+            return false;
+
+        if (prefix != null)
+            out.put(prefix);
+        out.put(text).put('\n');
+        return true;
+    }
+
+    private static void putMore(CharBuffer out, int count) {
+        out.put(MORE_START);
+        out.put(String.valueOf(count));
+        out.put(MORE_END);
+    }
+
+    /**
+     * @param t the current throwable
+     * @param line the index of the first line left out: 0 for the "Caused by" line, i + 1 for the i-th element
+     * @param seen the throwables already written
+     * @return the number of lines left out
+     */
+    private static int countLines(Throwable t, int line, Set<Throwable> seen) {
+        int count = t.getStackTrace().length + 1 - line;
+        Set<Throwable> counted = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        counted.addAll(seen);
+        for (Throwable cause = t.getCause(); cause != null; cause = cause.getCause()) {
+            if (!counted.add(cause)) {
+                count++;
+                break;
+            }
+            count += cause.getStackTrace().length + 1;
+        }
+        return count;
+    }
+}
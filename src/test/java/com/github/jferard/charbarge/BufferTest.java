@@ -23,9 +23,14 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
 
 import static org.junit.Assert.*;
 
@@ -50,24 +55,58 @@ public class BufferTest {
     }
 
     @Test
-    public void flushToWithoutAcceptTest() throws Exception {
+    public void flushToTest() throws Exception {
         Writer w = new StringWriter();
         Assert.assertTrue(buf.accept("a string"));
         buf.append("a string");
-        Assert.assertFalse(buf.flushTo(w));
-        Assert.assertEquals("", w.toString());
-        Assert.assertFalse(buf.accept("to long"));
-        Assert.assertTrue(buf.flushTo(w));
+        Assert.assertFalse(buf.isEmpty());
+        buf.flushTo(w);
         Assert.assertEquals("a string", w.toString());
+        Assert.assertTrue(buf.isEmpty());
+        Assert.assertTrue(buf.accept("a string"));
     }
 
     @Test
-    public void flushToTestWithAccept() throws Exception {
-        Writer w = new StringWriter();
+    public void flushToFailureTest() throws Exception {
         Assert.assertTrue(buf.accept("a string"));
         buf.append("a string");
-        Assert.assertFalse(buf.flushTo(w));
-        Assert.assertEquals("", w.toString());
+        try {
+            buf.flushTo(new Appendable() {
+                @Override
+                public Appendable append(CharSequence csq) throws IOException {
+                    throw new IOException();
+                }
+
+                @Override
+                public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                    throw new IOException();
+                }
+
+                @Override
+                public Appendable append(char c) throws IOException {
+                    throw new IOException();
+                }
+            });
+            Assert.fail();
+        } catch (IOException e) {
+            // pass
+        }
+        Assert.assertTrue(buf.isEmpty());
+    }
+
+    @Test
+    public void fillTest() throws Exception {
+        StringReader reader = new StringReader("a string that is too long");
+        Assert.assertTrue(buf.fill(reader));
+        Writer w = new StringWriter();
+        buf.flushTo(w);
+        Assert.assertTrue(buf.fill(reader));
+        buf.flushTo(w);
+        Assert.assertTrue(buf.fill(reader)); // short read: " long"
+        Assert.assertEquals(5, buf.length());
+        Assert.assertFalse(buf.fill(reader));
+        buf.flushTo(w);
+        Assert.assertEquals("a string that is too long", w.toString());
     }
 
     @Test(expected=IllegalStateException.class)
@@ -89,26 +128,76 @@ public class BufferTest {
     @Test
     public void toStringTest() throws Exception {
         String blankString = new String(new char[]{'\0', '\0', '\0', '\0', '\0', '\0', '\0', '\0', '\0', '\0'});
-        Assert.assertEquals("Buffer["+ blankString +", accept=false, closed=false]", buf.toString());
+        Assert.assertEquals("Buffer["+ blankString +", accept=false]", buf.toString());
         Assert.assertTrue(buf.accept("a string"));
         buf.append("a string");
         final String aString = new String(new char[]{'a', ' ', 's', 't', 'r', 'i', 'n', 'g', '\0', '\0'});
-        Assert.assertEquals("Buffer["+ aString +", accept=true, closed=false]", buf.toString());
+        Assert.assertEquals("Buffer["+ aString +", accept=true]", buf.toString());
         Assert.assertFalse(buf.accept("to long"));
-        Assert.assertEquals("Buffer["+ aString +", accept=false, closed=false]", buf.toString());
-        buf.closeAfterNextFlush();
-        Assert.assertEquals("Buffer["+ aString +", accept=false, closed=true]", buf.toString());
+        Assert.assertEquals("Buffer["+ aString +", accept=false]", buf.toString());
     }
 
     @Test
-    public void isOpenTest() throws Exception {
-        Assert.assertTrue(buf.isOpen());
-        buf.closeAfterNextFlush();
-        Assert.assertTrue(buf.isOpen());
+    public void isEmptyTest() throws Exception {
+        Assert.assertTrue(buf.isEmpty());
         Assert.assertTrue(buf.accept("a string"));
         buf.append("a string");
+        Assert.assertFalse(buf.isEmpty());
         buf.flushTo(new StringWriter());
-        Assert.assertFalse(buf.isOpen());
+        Assert.assertTrue(buf.isEmpty());
+    }
+
+    @Test
+    public void acceptUpToTest() throws Exception {
+        Assert.assertEquals(8, buf.acceptUpTo(8));
+        buf.append("a string".toCharArray(), 0, 8);
+        Assert.assertEquals(2, buf.acceptUpTo(8));
+        buf.append("a string", 0, 2);
+        Assert.assertEquals(0, buf.acceptUpTo(8));
+        Writer w = new StringWriter();
+        buf.flushTo(w);
+        Assert.assertEquals("a stringa ", w.toString());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void appendCharsWithoutAcceptTest() throws Exception {
+        buf.append("a string".toCharArray(), 0, 8);
+    }
+
+    @Test
+    public void formatFailureTest() throws Exception {
+        Assert.assertTrue(buf.accept("a "));
+        buf.append("a ");
+        RecordFormatter<String> formatter = new RecordFormatter<String>() {
+            @Override
+            public void format(String record, CharBuffer out) {
+                out.put(record);
+                throw new IllegalStateException();
+            }
+        };
+        try {
+            buf.format(formatter, "record");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // pass
+        }
+        Writer w = new StringWriter();
+        buf.flushTo(w);
+        Assert.assertEquals("a ", w.toString());
+    }
+
+    @Test
+    public void decodeTest() throws Exception {
+        CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();
+        ByteBuffer in = ByteBuffer.wrap("a strings é".getBytes("UTF-8"));
+        Assert.assertTrue(buf.decode(decoder, in, false).isOverflow());
+        Assert.assertEquals(10, buf.length());
+        Assert.assertEquals(2, in.remaining());
+        Writer w = new StringWriter();
+        buf.flushTo(w);
+        Assert.assertEquals("a strings ", w.toString());
+        Assert.assertTrue(buf.decode(decoder, in, true).isUnderflow());
+        Assert.assertEquals(1, buf.length());
     }
 
 }
\ No newline at end of file
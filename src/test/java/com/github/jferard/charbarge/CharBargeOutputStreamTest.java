@@ -0,0 +1,131 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+public class CharBargeOutputStreamTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CharBarge barge;
+    private StringWriter w;
+    private AppendableConsumer c;
+
+    @Before
+    public void setUp() {
+        this.barge = CharBarge.create(16);
+        this.w = new StringWriter();
+        this.c = new AppendableConsumer(this.barge, this.w);
+        this.c.start();
+    }
+
+    @Test
+    public void writeTest() throws Exception {
+        OutputStream out = new CharBargeOutputStream(this.barge, UTF_8);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String s = "é€ string " + i + "\n";
+            byte[] bytes = s.getBytes("UTF-8");
+            out.write(bytes, 0, 3);
+            for (int j = 3; j < bytes.length; j++)
+                out.write(bytes[j]);
+            expected.append(s);
+        }
+        out.close();
+        this.c.join();
+        Assert.assertEquals(expected.toString(), this.w.toString());
+    }
+
+    @Test
+    public void malformedTest() throws Exception {
+        OutputStream out = new CharBargeOutputStream(this.barge, UTF_8);
+        out.write(new byte[]{'a', (byte) 0xC3});
+        out.close();
+        this.c.join();
+        Assert.assertEquals("a�", this.w.toString());
+    }
+
+    @Test
+    public void printStreamTest() throws Exception {
+        PrintStream ps = new CharBargePrintStream(this.barge, UTF_8);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            ps.print("line ");
+            ps.print(i);
+            ps.print('\n');
+            expected.append("line ").append(i).append('\n');
+        }
+        ps.close();
+        this.c.join();
+        Assert.assertEquals(expected.toString(), this.w.toString());
+    }
+
+    @Test
+    public void closeTwiceTest() throws Exception {
+        OutputStream out = new CharBargeOutputStream(this.barge, UTF_8);
+        out.write("a string".getBytes("UTF-8"));
+        out.close();
+        out.close();
+        this.c.join();
+        Assert.assertEquals("a string", this.w.toString());
+    }
+
+    @Test
+    public void printStreamOrderTest() throws Exception {
+        PrintStream ps = new CharBargePrintStream(this.barge, UTF_8);
+        ps.print("a");
+        this.barge.append("b");
+        ps.write("é".getBytes("UTF-8"));
+        this.barge.append("c");
+        ps.append('d').append("ef", 1, 2);
+        this.barge.append("g");
+        ps.close();
+        this.c.join();
+        Assert.assertFalse(ps.checkError());
+        Assert.assertEquals("abécdfg", this.w.toString());
+    }
+
+    @Test
+    public void printlnTest() throws Exception {
+        PrintStream ps = new CharBargePrintStream(this.barge, UTF_8, true);
+        String sep = System.getProperty("line.separator");
+        ps.println("line");
+        ps.println(1);
+        ps.printf("%s-%d", "x", 2);
+        ps.println();
+        ps.close();
+        this.c.join();
+        Assert.assertEquals("line" + sep + "1" + sep + "x-2" + sep, this.w.toString());
+    }
+
+    @Test
+    public void printAfterCloseTest() throws Exception {
+        PrintStream ps = new CharBargePrintStream(this.barge, UTF_8);
+        ps.close();
+        ps.print("a string");
+        Assert.assertTrue(ps.checkError());
+    }
+}
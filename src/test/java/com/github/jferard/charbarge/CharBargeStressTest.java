@@ -0,0 +1,297 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the barge under many producer/consumer interleavings. Each round is built from a seed: buffer capacity,
+ * number of producers, record sizes (with sizes near the buffer capacity), methods used to append and yields. The
+ * thread schedule is still up to the JVM, but a failing round reports its seed.
+ *
+ * Every producer writes its own chars (see charOf), hence the output can be split by producer and checked: no char
+ * lost, duplicated or reordered, and records appended in one call are never interleaved with other chars.
+ */
+public class CharBargeStressTest {
+    private static final int ROUNDS = 60;
+    private static final long TIMEOUT = 10000;
+    private static final int MAX_PRODUCERS = 4;
+
+    private static final RecordFormatter<char[]> FORMATTER = new RecordFormatter<char[]>() {
+        @Override
+        public void format(char[] record, CharBuffer out) {
+            out.put(record);
+        }
+    };
+
+    @Test
+    public void recordsTest() throws Exception {
+        for (int i = 0; i < ROUNDS; i++)
+            this.runRound(1000 + i, true, false);
+    }
+
+    @Test
+    public void mixedTest() throws Exception {
+        for (int i = 0; i < ROUNDS; i++)
+            this.runRound(2000 + i, false, false);
+    }
+
+    @Test
+    public void closeWhileProducingTest() throws Exception {
+        for (int i = 0; i < ROUNDS; i++)
+            this.runRound(3000 + i, false, true);
+    }
+
+    private void runRound(long seed, boolean recordsOnly, boolean closeEarly) throws Exception {
+        Random random = new Random(seed);
+        int capacity = 1 + random.nextInt(64);
+        int producerCount = 1 + random.nextInt(MAX_PRODUCERS);
+        String round = "seed=" + seed + ", capacity=" + capacity + ", producers=" + producerCount;
+
+        CharBarge barge = CharBarge.create(capacity);
+        YieldingAppendable out = new YieldingAppendable(new Random(random.nextLong()));
+        AppendableConsumer consumer = new AppendableConsumer(barge, out);
+        consumer.setDaemon(true);
+        List<RecordProducer> producers = new ArrayList<RecordProducer>();
+        for (int p = 0; p < producerCount; p++)
+            producers.add(new RecordProducer(barge, p, capacity, 20 + random.nextInt(100), recordsOnly,
+                    new Random(random.nextLong())));
+
+        consumer.start();
+        for (RecordProducer producer : producers)
+            producer.start();
+        if (closeEarly) {
+            for (int i = random.nextInt(1000); i > 0; i--)
+                Thread.yield();
+        } else {
+            for (RecordProducer producer : producers)
+                this.join(producer, round);
+        }
+        barge.close();
+        for (RecordProducer producer : producers)
+            this.join(producer, round);
+        this.join(consumer, round);
+
+        for (RecordProducer producer : producers) {
+            if (producer.error != null)
+                throw new AssertionError(round + ": " + producer.error);
+        }
+        this.check(round, out.toString(), producers, closeEarly);
+    }
+
+    private void join(Thread thread, String round) throws InterruptedException {
+        thread.join(TIMEOUT);
+        if (thread.isAlive())
+            Assert.fail(round + ": " + thread.getName() + " is blocked");
+    }
+
+    private void check(String round, String out, List<RecordProducer> producers, boolean closeEarly) {
+        int[] positions = new int[producers.size()];
+        for (int i = 0; i < out.length(); i++) {
+            char c = out.charAt(i);
+            int p = producerOf(c);
+            Assert.assertTrue(round + ": unknown char at " + i, 0 <= p && p < producers.size());
+            RecordProducer producer = producers.get(p);
+            int position = positions[p]++;
+            Assert.assertTrue(round + ": unexpected char of producer " + p + " at " + i,
+                    position < producer.sent.length() + producer.failed.length());
+            Assert.assertEquals(round + ": lost, duplicated or reordered char of producer " + p + " at " + i,
+                    charOf(p, position), c);
+            if (producer.inRecord.get(position) && i + 1 < out.length())
+                Assert.assertEquals(round + ": record of producer " + p + " interleaved at " + i, p,
+                        producerOf(out.charAt(i + 1)));
+        }
+
+        for (int p = 0; p < producers.size(); p++) {
+            RecordProducer producer = producers.get(p);
+            Assert.assertTrue(round + ": chars of producer " + p + " lost", positions[p] >= producer.sent.length());
+            if (!closeEarly)
+                Assert.assertEquals(round + ": chars of producer " + p + " lost", producer.sent.length(),
+                        positions[p]);
+        }
+    }
+
+    private static char charOf(int producer, int position) {
+        return (char) (0x1000 * (producer + 1) + (position & 0xFFF));
+    }
+
+    private static int producerOf(char c) {
+        return c / 0x1000 - 1;
+    }
+
+    /**
+     * A producer that uses all the append methods of the barge.
+     */
+    private static class RecordProducer extends Thread {
+        private final CharBarge barge;
+        private final int id;
+        private final int capacity;
+        private final int count;
+        private final boolean recordsOnly;
+        private final Random random;
+        /** the chars appended without error */
+        private final StringBuilder sent;
+        /** the chars of the call that failed, some of them may have been appended */
+        private String failed;
+        /** true if the char and the next one belong to the same record */
+        private final BitSet inRecord;
+        private Throwable error;
+
+        RecordProducer(CharBarge barge, int id, int capacity, int count, boolean recordsOnly, Random random) {
+            this.barge = barge;
+            this.id = id;
+            this.capacity = capacity;
+            this.count = count;
+            this.recordsOnly = recordsOnly;
+            this.random = random;
+            this.sent = new StringBuilder();
+            this.failed = "";
+            this.inRecord = new BitSet();
+            this.setName("producer-" + id);
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < this.count; i++) {
+                int method = this.random.nextInt(this.recordsOnly ? 3 : 6);
+                boolean record = method < 3;
+                char[] chars = this.nextChars(record ? this.recordLength() : 1 + this.random.nextInt(3 * this.capacity));
+                try {
+                    this.send(method, chars);
+                } catch (IOException e) {
+                    this.failed = new String(chars);
+                    return;
+                } catch (Throwable e) {
+                    this.error = e;
+                    return;
+                }
+                if (record)
+                    this.inRecord.set(this.sent.length(), this.sent.length() + chars.length - 1);
+                this.sent.append(chars);
+
+                if (this.random.nextInt(8) == 0)
+                    this.barge.flush();
+                if (this.random.nextInt(4) == 0)
+                    Thread.yield();
+            }
+        }
+
+        private void send(int method, char[] chars) throws IOException {
+            switch (method) {
+                case 0:
+                    this.barge.append(new String(chars));
+                    break;
+                case 1:
+                    this.barge.append(FORMATTER, chars);
+                    break;
+                case 2:
+                    if (!this.barge.tryAppend(FORMATTER, chars))
+                        this.barge.append(FORMATTER, chars);
+                    break;
+                case 3:
+                    this.barge.write(chars, 0, chars.length);
+                    break;
+                case 4:
+                    this.barge.write(new String(chars), 0, chars.length);
+                    break;
+                default:
+                    this.barge.transferFrom(new CharArrayReader(chars));
+                    break;
+            }
+        }
+
+        /**
+         * @return a record length, often near the capacity of the buffers
+         */
+        private int recordLength() {
+            switch (this.random.nextInt(4)) {
+                case 0:
+                    return this.capacity;
+                case 1:
+                    return Math.max(1, this.capacity - 1);
+                case 2:
+                    return 1;
+                default:
+                    return 1 + this.random.nextInt(this.capacity);
+            }
+        }
+
+        private char[] nextChars(int length) {
+            char[] chars = new char[length];
+            int position = this.sent.length();
+            for (int i = 0; i < length; i++)
+                chars[i] = charOf(this.id, position + i);
+            return chars;
+        }
+    }
+
+    /**
+     * An Appendable that yields now and then, to vary the interleavings.
+     */
+    private static class YieldingAppendable implements Appendable {
+        private final StringBuilder sb;
+        private final Random random;
+
+        YieldingAppendable(Random random) {
+            this.sb = new StringBuilder();
+            this.random = random;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            this.yieldSometimes();
+            this.sb.append(csq);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            this.yieldSometimes();
+            this.sb.append(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            this.yieldSometimes();
+            this.sb.append(c);
+            return this;
+        }
+
+        private void yieldSometimes() {
+            if (this.random.nextInt(3) == 0)
+                Thread.yield();
+        }
+
+        @Override
+        public String toString() {
+            return this.sb.toString();
+        }
+    }
+}
@@ -19,19 +19,15 @@
 
 package com.github.jferard.charbarge;
 
-import org.easymock.EasyMock;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
-import org.powermock.api.easymock.PowerMock;
 
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.CharBuffer;
 
-import static org.junit.Assert.*;
-
 /**
  * Created by jferard on 24/07/17.
  */
@@ -39,179 +35,197 @@ public class CharBargeTest {
     private CharBarge barge;
     private Buffer b1;
     private Buffer b2;
+    private Writer w;
 
     @Before
     public void setUp() {
-        b1 = PowerMock.createMock(Buffer.class);
-        b2 = PowerMock.createMock(Buffer.class);
+        b1 = new Buffer(CharBuffer.allocate(10));
+        b2 = new Buffer(CharBuffer.allocate(10));
         barge = new CharBarge(b1, b2);
+        w = new StringWriter();
     }
 
     @Test
     public void createTest() {
         CharBarge barge = CharBarge.create(10);
+        Assert.assertTrue(barge.isOpen());
     }
 
     @Test
     public void flushToTest() throws IOException {
-        Writer w = new StringWriter();
-        EasyMock.expect(b2.flushTo(w)).andReturn(true);
-
-        PowerMock.replayAll();
+        barge.append("a string");
+        barge.append("other");
+        Assert.assertFalse(b1.isEmpty());
         barge.flushTo(w);
-        PowerMock.verifyAll();
+        Assert.assertEquals("a string", w.toString());
+        Assert.assertTrue(b1.isEmpty());
+        Assert.assertFalse(b2.isEmpty());
     }
 
     @Test
-    public void flushToWithInterruptTest() throws IOException {
-        final Writer w = new StringWriter();
-        EasyMock.expect(b2.flushTo(w)).andReturn(false).anyTimes();
+    public void flushToTimeoutTest() throws IOException {
+        barge.append("a string");
+        Assert.assertFalse(barge.flushTo(w, 10));
+        Assert.assertEquals("", w.toString());
+        barge.append("other");
+        Assert.assertTrue(barge.flushTo(w, 10));
+        Assert.assertEquals("a string", w.toString());
+    }
 
-        PowerMock.replayAll();
+    @Test
+    public void flushToRequestedTest() throws Exception {
+        barge.append("a string");
         Thread t = new Thread() {
             @Override
             public void run() {
                 try {
                     barge.flushTo(w);
                 } catch (IOException e) {
-                    Assert.assertTrue(e.toString().contains("InterruptedException"));
+                    Assert.fail();
                 }
             }
         };
         t.start();
-        t.interrupt();
-        Assert.assertTrue(t.isInterrupted());
-        PowerMock.verifyAll();
+        barge.flush();
+        t.join();
+        Assert.assertEquals("a string", w.toString());
     }
 
     @Test
-    public void appendOkTest() throws IOException {
-        EasyMock.expect(this.b1.accept("a string")).andReturn(true);
-        this.b1.append("a string");
+    public void forceFlushToTest() throws IOException {
+        barge.append("a string");
+        barge.append("other");
+        barge.forceFlushTo(w);
+        Assert.assertEquals("a stringother", w.toString());
+        Assert.assertTrue(b1.isEmpty());
+        Assert.assertTrue(b2.isEmpty());
+    }
 
-        PowerMock.replayAll();
+    @Test
+    public void flushToWithInterruptTest() throws Exception {
+        final IOException[] caught = new IOException[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    barge.flushTo(w);
+                } catch (IOException e) {
+                    caught[0] = e;
+                }
+            }
+        };
+        t.start();
+        t.interrupt();
+        t.join();
+        Assert.assertTrue(caught[0].toString().contains("InterruptedException"));
+    }
 
+    @Test
+    public void appendOkTest() throws IOException {
         this.barge.append("a string");
-
-        PowerMock.verifyAll();
+        this.barge.forceFlushTo(w);
+        Assert.assertEquals("a string", w.toString());
     }
 
     @Test
     public void appendCharTest() throws IOException {
-        EasyMock.expect(this.b1.accept("a")).andReturn(true);
-        this.b1.append("a");
-
-        PowerMock.replayAll();
-
         this.barge.append('a');
-
-        PowerMock.verifyAll();
+        this.barge.forceFlushTo(w);
+        Assert.assertEquals("a", w.toString());
     }
 
     @Test
     public void appendSubsequenceTest() throws IOException {
-        EasyMock.expect(this.b1.accept("a")).andReturn(true);
-        this.b1.append("a");
-
-        PowerMock.replayAll();
-
         this.barge.append("a string", 0, 1);
-
-        PowerMock.verifyAll();
+        this.barge.forceFlushTo(w);
+        Assert.assertEquals("a", w.toString());
     }
 
     @Test
-    public void appendInterrupterTest() throws IOException {
-        EasyMock.expect(b1.accept("a string")).andReturn(false).anyTimes();
-
-        PowerMock.replayAll();
-
+    public void appendInterrupterTest() throws Exception {
+        barge.append("a string");
+        barge.append("a string");
+        final IOException[] caught = new IOException[1];
         Thread t = new Thread() {
             @Override
             public void run() {
                 try {
                     barge.append("a string");
                 } catch (IOException e) {
-                    Assert.assertTrue(e.toString().contains("InterruptedException"));
+                    caught[0] = e;
                 }
             }
         };
         t.start();
         t.interrupt();
-        Assert.assertTrue(t.isInterrupted());
-
-        PowerMock.verifyAll();
+        t.join();
+        Assert.assertTrue(caught[0].toString().contains("InterruptedException"));
     }
 
     @Test
-    public void appendNotOkTest() throws IOException {
-        EasyMock.expect(b1.accept("a string")).andReturn(false).anyTimes();
-        EasyMock.expect(b2.accept("a string")).andReturn(true).anyTimes();
-        this.b2.append("a string");
-        EasyMock.expectLastCall().anyTimes();
-
-        PowerMock.replayAll();
-
+    public void appendNotOkTest() throws Exception {
+        barge.append("a string");
+        barge.append("b string");
         Thread t = new Thread() {
             @Override
             public void run() {
                 try {
-                    barge.append("a string");
+                    barge.append("c string");
                 } catch (IOException e) {
                     Assert.fail();
                 }
             }
         };
         t.start();
-        synchronized (barge) {
-            barge.notifyAll();
+        barge.flushTo(w);
+        t.join();
+        barge.forceFlushTo(w);
+        Assert.assertEquals("a stringb stringc string", w.toString());
+    }
+
+    @Test
+    public void appendTooLongTest() throws IOException {
+        try {
+            barge.append("a too long string");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // pass
         }
+        Assert.assertFalse(barge.isOpen());
+    }
 
-        PowerMock.verifyAll();
+    @Test(expected = IOException.class)
+    public void appendAfterCloseTest() throws IOException {
+        this.barge.close();
+        this.barge.append("a string");
     }
 
     @Test
     public void closeTest() throws IOException {
-        b1.closeAfterNextFlush();
-        b2.closeAfterNextFlush();
-        EasyMock.expect(b1.isOpen()).andReturn(true);
-
-        PowerMock.replayAll();
-
-        this.barge.close();
         Assert.assertTrue(this.barge.isOpen());
-
-        PowerMock.verifyAll();
+        this.barge.close();
+        Assert.assertFalse(this.barge.isOpen());
     }
 
     @Test
     public void close2Test() throws IOException {
-        b1.closeAfterNextFlush();
-        b2.closeAfterNextFlush();
-        EasyMock.expect(b1.isOpen()).andReturn(false);
-        EasyMock.expect(b2.isOpen()).andReturn(true);
-
-        PowerMock.replayAll();
-
+        this.barge.append("a string");
         this.barge.close();
         Assert.assertTrue(this.barge.isOpen());
-
-        PowerMock.verifyAll();
+        this.barge.flushTo(w);
+        Assert.assertFalse(this.barge.isOpen());
+        Assert.assertEquals("a string", w.toString());
     }
 
     @Test
     public void close3Test() throws IOException {
-        b1.closeAfterNextFlush();
-        b2.closeAfterNextFlush();
-        EasyMock.expect(b1.isOpen()).andReturn(false);
-        EasyMock.expect(b2.isOpen()).andReturn(false);
-
-        PowerMock.replayAll();
-
+        this.barge.append("a string");
+        this.barge.append("other");
         this.barge.close();
+        this.barge.flushTo(w);
+        Assert.assertTrue(this.barge.isOpen());
+        this.barge.flushTo(w);
         Assert.assertFalse(this.barge.isOpen());
-
-        PowerMock.verifyAll();
+        Assert.assertEquals("a stringother", w.toString());
     }
-
-}
\ No newline at end of file
+}
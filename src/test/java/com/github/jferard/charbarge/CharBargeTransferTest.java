@@ -0,0 +1,153 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+public class CharBargeTransferTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void transferFromReadableTest() throws Exception {
+        CharBarge barge = CharBarge.create(10);
+        StringWriter w = new StringWriter();
+        AppendableConsumer c = new AppendableConsumer(barge, w);
+        c.start();
+
+        String text = this.text(200);
+        barge.append("first|");
+        Assert.assertEquals(200, barge.transferFrom(new StringReader(text)));
+        barge.append("|last");
+        barge.close();
+        c.join();
+        Assert.assertEquals("first|" + text + "|last", w.toString());
+    }
+
+    @Test
+    public void transferFromEmptyReadableTest() throws Exception {
+        CharBarge barge = CharBarge.create(10);
+        barge.append("a string");
+        Assert.assertEquals(0, barge.transferFrom(new StringReader("")));
+        barge.close();
+        StringWriter w = new StringWriter();
+        barge.flushTo(w);
+        Assert.assertFalse(barge.isOpen());
+        Assert.assertEquals("a string", w.toString());
+    }
+
+    @Test
+    public void transferFromFileTest() throws Exception {
+        String text = this.text(500);
+        File file = this.folder.newFile("transfer.txt");
+        OutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+
+        CharBarge barge = CharBarge.create(16);
+        StringWriter w = new StringWriter();
+        AppendableConsumer c = new AppendableConsumer(barge, w);
+        c.start();
+
+        barge.append("first|");
+        Assert.assertEquals(500, barge.transferFrom(file, UTF_8));
+        barge.close();
+        c.join();
+        Assert.assertEquals("first|" + text, w.toString());
+    }
+
+    @Test
+    public void transferFromEmptyFileTest() throws Exception {
+        File file = this.folder.newFile("empty.txt");
+        CharBarge barge = CharBarge.create(10);
+        Assert.assertEquals(0, barge.transferFrom(file, UTF_8));
+        barge.close();
+        Assert.assertFalse(barge.isOpen());
+    }
+
+    @Test
+    public void transferFromSlowReaderTest() throws Exception {
+        File file = this.folder.newFile("durable.txt");
+        FileChannel channel = new FileOutputStream(file).getChannel();
+        final CharBarge barge = CharBarge.create(64);
+        DurableFileConsumer c = new DurableFileConsumer(barge, channel, UTF_8);
+        c.start();
+
+        PipedWriter pipe = new PipedWriter();
+        final PipedReader reader = new PipedReader(pipe);
+        Thread transfer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    barge.transferFrom(reader);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        transfer.start();
+        pipe.write("some chars|");
+        pipe.flush();
+
+        // the transfer waits for the next chars, but the consumer can flush the barge
+        c.appendDurable("audit record\n").get(10, TimeUnit.SECONDS);
+
+        pipe.write("other chars");
+        pipe.close();
+        transfer.join();
+        barge.close();
+        c.join();
+        channel.close();
+        String written = TestFiles.read(file, UTF_8);
+        Assert.assertTrue(written, written.contains("audit record\n"));
+        Assert.assertTrue(written, written.contains("some chars|"));
+        Assert.assertTrue(written, written.endsWith("other chars"));
+    }
+
+    @Test(expected = IOException.class)
+    public void transferAfterCloseTest() throws IOException {
+        CharBarge barge = CharBarge.create(10);
+        barge.close();
+        barge.transferFrom(new StringReader("a string"));
+    }
+
+    private String text(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            sb.append(i % 7 == 0 ? 'é' : (char) ('a' + i % 26));
+        return sb.toString();
+    }
+}
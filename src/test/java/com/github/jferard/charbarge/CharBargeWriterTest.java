@@ -0,0 +1,78 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.io.Writer;
+
+public class CharBargeWriterTest {
+    private CharBarge barge;
+    private StringWriter w;
+    private AppendableConsumer c;
+
+    @Before
+    public void setUp() {
+        this.barge = CharBarge.create(16);
+        this.w = new StringWriter();
+        this.c = new AppendableConsumer(this.barge, this.w);
+        this.c.start();
+    }
+
+    @Test
+    public void writeTest() throws Exception {
+        Writer writer = new CharBargeWriter(this.barge);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String s = "a string longer than 16 chars " + i + "\n";
+            writer.write(s);
+            writer.write(s.toCharArray(), 2, 10);
+            writer.write('|');
+            writer.append(new StringBuilder(s), 0, 5);
+            expected.append(s).append(s, 2, 12).append('|').append(s, 0, 5);
+        }
+        writer.close();
+        this.c.join();
+        Assert.assertEquals(expected.toString(), this.w.toString());
+    }
+
+    @Test
+    public void flushTest() throws Exception {
+        Writer writer = new CharBargeWriter(this.barge);
+        writer.write("abc");
+        writer.flush();
+        for (int i = 0; i < 100 && this.w.toString().isEmpty(); i++)
+            Thread.sleep(10);
+        Assert.assertEquals("abc", this.w.toString());
+        writer.close();
+        this.c.join();
+    }
+
+    @Test
+    public void appendNullTest() throws Exception {
+        Writer writer = new CharBargeWriter(this.barge);
+        writer.append(null).append(null, 1, 3);
+        writer.close();
+        this.c.join();
+        Assert.assertEquals("nullul", this.w.toString());
+    }
+}
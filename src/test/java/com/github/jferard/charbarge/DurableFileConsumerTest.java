@@ -0,0 +1,155 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class DurableFileConsumerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private FileChannel channel;
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = this.folder.newFile("durable.log");
+        this.channel = new FileOutputStream(this.file).getChannel();
+    }
+
+    @Test
+    public void appendDurableTest() throws Exception {
+        CharBarge barge = CharBarge.create(1024);
+        DurableFileConsumer c = new DurableFileConsumer(barge, this.channel, UTF_8);
+        c.start();
+
+        Future<Void> future = c.appendDurable("a récord\n");
+        future.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("a récord\n", this.read());
+
+        barge.close();
+        c.join();
+        this.channel.close();
+        Assert.assertEquals("a récord\n", this.read());
+    }
+
+    @Test
+    public void manyProducersTest() throws Exception {
+        final CharBarge barge = CharBarge.create(64);
+        final DurableFileConsumer c = new DurableFileConsumer(barge, this.channel, UTF_8);
+        c.start();
+
+        final List<String> errors = new ArrayList<String>();
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int n = t;
+            Thread p = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            String record = "p" + n + "-" + i + "\n";
+                            c.appendDurable(record).get(10, TimeUnit.SECONDS);
+                            if (!DurableFileConsumerTest.this.read().contains(record))
+                                throw new AssertionError(record + " was acknowledged but not written");
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e.toString());
+                        }
+                    }
+                }
+            };
+            producers.add(p);
+            p.start();
+        }
+        for (Thread p : producers)
+            p.join();
+        barge.close();
+        c.join();
+        this.channel.close();
+
+        Assert.assertEquals(Arrays.<String>asList(), errors);
+        String[] lines = this.read().split("\n");
+        Assert.assertEquals(200, lines.length);
+        Arrays.sort(lines);
+        Assert.assertEquals("p0-0", lines[0]);
+        Assert.assertEquals("p3-9", lines[199]);
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void appendDurableTooLongTest() throws Exception {
+        CharBarge barge = CharBarge.create(8);
+        DurableFileConsumer c = new DurableFileConsumer(barge, this.channel, UTF_8);
+        Future<Void> future = c.appendDurable("1234");
+        try {
+            c.appendDurable("a record too long");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        c.start();
+        c.join();
+        future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void appendDurableAfterFailureTest() throws Exception {
+        CharBarge barge = CharBarge.create(16);
+        DurableFileConsumer c = new DurableFileConsumer(barge, this.channel, UTF_8);
+        Future<Void> future = c.appendDurable("a record\n");
+        this.channel.close();
+        c.start();
+        c.join();
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            // pass
+        }
+        try {
+            c.appendDurable("another record\n").get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (IOException e) {
+            // pass: the barge was closed
+        }
+    }
+
+    private String read() throws IOException {
+        return TestFiles.read(this.file, UTF_8);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import com.github.jferard.charbarge.log.AsyncAppender;
+import com.github.jferard.charbarge.log.FullBargePolicy;
+import com.github.jferard.charbarge.log.Level;
+import com.github.jferard.charbarge.log.LogFormatter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+public class RollingFileConsumerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rollTest() throws Exception {
+        File file = new File(this.folder.getRoot(), "rolling.log");
+        CharBarge barge = CharBarge.create(10);
+        RollingFileConsumer c = new RollingFileConsumer(barge, file, UTF_8, 20, 2);
+        c.start();
+        for (int i = 0; i < 100; i++)
+            barge.append("record\n");
+        barge.close();
+        c.join();
+
+        Assert.assertTrue(file.exists());
+        Assert.assertTrue(new File(file.getPath() + ".1").exists());
+        Assert.assertTrue(new File(file.getPath() + ".2").exists());
+        Assert.assertFalse(new File(file.getPath() + ".3").exists());
+        Assert.assertTrue(file.length() < 20 + 10);
+        Assert.assertEquals(0, file.length() % "record\n".length());
+        Assert.assertTrue(new File(file.getPath() + ".1").length() >= 20);
+    }
+
+    @Test
+    public void noBackupTest() throws Exception {
+        File file = new File(this.folder.getRoot(), "rolling.log");
+        CharBarge barge = CharBarge.create(10);
+        RollingFileConsumer c = new RollingFileConsumer(barge, file, UTF_8, 20, 0);
+        c.start();
+        for (int i = 0; i < 100; i++)
+            barge.append("record\n");
+        barge.close();
+        c.join();
+
+        Assert.assertTrue(file.length() < 20 + 10);
+        Assert.assertFalse(new File(file.getPath() + ".1").exists());
+    }
+
+    @Test(timeout = 10000)
+    public void unwritableFileTest() throws Exception {
+        File file = new File(this.folder.getRoot(), "missing/rolling.log");
+        CharBarge barge = CharBarge.create(64);
+        RollingFileConsumer c = new RollingFileConsumer(barge, file, UTF_8, 20, 2);
+        AsyncAppender appender = new AsyncAppender(barge, new LogFormatter(), FullBargePolicy.BLOCK);
+        c.start();
+        int appended = 0;
+        while (appender.append(Level.INFO, "a.logger", "a message"))
+            appended++;
+        c.join();
+        Assert.assertFalse(appender.append(Level.INFO, "a.logger", "a message"));
+        Assert.assertEquals(2, appender.getDiscardedCount());
+        Assert.assertTrue(appended < 100);
+    }
+
+    @Test
+    public void surrogatePairSplitAtRollTest() throws Exception {
+        // every flushed buffer is rolled, and the buffers split the surrogate pairs
+        File file = new File(this.folder.getRoot(), "rolling.log");
+        CharBarge barge = CharBarge.create(5);
+        RollingFileConsumer c = new RollingFileConsumer(barge, file, UTF_8, 1, 100);
+        c.start();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            String s = "x\uD83D\uDE00";
+            barge.write(s, 0, s.length());
+            expected.append(s);
+        }
+        barge.close();
+        c.join();
+
+        StringBuilder actual = new StringBuilder();
+        for (int i = 100; i >= 1; i--) {
+            File backup = new File(file.getPath() + "." + i);
+            if (backup.exists())
+                actual.append(TestFiles.read(backup, UTF_8));
+        }
+        Assert.assertTrue(new File(file.getPath() + ".10").exists());
+        actual.append(TestFiles.read(file, UTF_8));
+        Assert.assertEquals(expected.toString(), actual.toString());
+    }
+}
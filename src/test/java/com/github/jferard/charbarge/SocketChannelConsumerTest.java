@@ -0,0 +1,217 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+
+public class SocketChannelConsumerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private InetAddress loopback;
+
+    @Before
+    public void setUp() throws UnknownHostException {
+        this.loopback = InetAddress.getByName("127.0.0.1");
+    }
+
+    @Test
+    public void sendTest() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 1, this.loopback);
+        LoopbackServer server = new LoopbackServer(serverSocket);
+        server.start();
+
+        CharBarge barge = CharBarge.create(16);
+        SocketChannelConsumer c = new SocketChannelConsumer(barge,
+                new InetSocketAddress(this.loopback, serverSocket.getLocalPort()), UTF_8);
+        c.start();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String record = "récord " + i + "\n";
+            barge.append(record);
+            expected.append(record);
+        }
+        barge.close();
+        c.join();
+        server.join();
+
+        Assert.assertEquals(expected.toString(), server.received());
+    }
+
+    @Test
+    public void reconnectTest() throws Exception {
+        ServerSocket probe = new ServerSocket(0, 1, this.loopback);
+        int port = probe.getLocalPort();
+        probe.close();
+
+        CharBarge barge = CharBarge.create(16);
+        SocketChannelConsumer c = new SocketChannelConsumer(barge,
+                new InetSocketAddress(this.loopback, port), UTF_8, 1024, 10);
+        c.start();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String record = "record " + i + "\n";
+            barge.append(record);
+            expected.append(record);
+        }
+        barge.close();
+        Thread.sleep(50);
+        Assert.assertTrue(c.isAlive());
+
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(this.loopback, port));
+        LoopbackServer server = new LoopbackServer(serverSocket);
+        server.start();
+        c.join();
+        server.join();
+
+        Assert.assertEquals(expected.toString(), server.received());
+    }
+
+    @Test
+    public void reconnectIdleTest() throws Exception {
+        ServerSocket probe = new ServerSocket(0, 1, this.loopback);
+        int port = probe.getLocalPort();
+        probe.close();
+
+        CharBarge barge = CharBarge.create(16);
+        SocketChannelConsumer c = new SocketChannelConsumer(barge,
+                new InetSocketAddress(this.loopback, port), UTF_8, 1024, 10);
+        c.start();
+        barge.append("a record\n");
+        barge.flush();
+        Thread.sleep(50);
+
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(this.loopback, port));
+        LoopbackServer server = new LoopbackServer(serverSocket);
+        server.start();
+
+        // the producers are idle: the consumer retries by itself
+        long end = System.currentTimeMillis() + 10000;
+        while (server.received().isEmpty() && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        Assert.assertEquals("a record\n", server.received());
+
+        barge.close();
+        c.join();
+        server.join();
+    }
+
+    @Test
+    public void connectionDropTest() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 1, this.loopback);
+        LoopbackServer server = new LoopbackServer(serverSocket, 100);
+        server.start();
+
+        CharBarge barge = CharBarge.create(16);
+        SocketChannelConsumer c = new SocketChannelConsumer(barge,
+                new InetSocketAddress(this.loopback, serverSocket.getLocalPort()), UTF_8, 1024, 10);
+        c.start();
+        int i = 0;
+        long end = System.currentTimeMillis() + 10000;
+        while (!server.isReconnected() && System.currentTimeMillis() < end) {
+            barge.append("record " + i++ + "\n");
+            barge.flush();
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(server.isReconnected());
+        for (int j = 0; j < 100; j++)
+            barge.append("record " + i++ + "\n");
+        barge.close();
+        c.join();
+        server.join();
+
+        // the chars written before the drop was detected are lost and the first line may be the end of a record,
+        // but the next records are sent in order, up to the last one.
+        String[] lines = server.received().split("\n");
+        Assert.assertTrue(lines.length > 100);
+        int first = Integer.parseInt(lines[1].substring("record ".length()));
+        for (int k = 1; k < lines.length; k++)
+            Assert.assertEquals("record " + (first + k - 1), lines[k]);
+        Assert.assertEquals("record " + (i - 1), lines[lines.length - 1]);
+    }
+
+    /**
+     * A server that accepts one connection and reads it until the end. If dropAfter is not negative, the first
+     * connection is closed after dropAfter bytes and the server accepts a second connection.
+     */
+    private static class LoopbackServer extends Thread {
+        private ServerSocket serverSocket;
+        private int dropAfter;
+        private ByteArrayOutputStream received;
+        private volatile boolean reconnected;
+
+        public LoopbackServer(ServerSocket serverSocket) {
+            this(serverSocket, -1);
+        }
+
+        public LoopbackServer(ServerSocket serverSocket, int dropAfter) {
+            this.serverSocket = serverSocket;
+            this.dropAfter = dropAfter;
+            this.received = new ByteArrayOutputStream();
+        }
+
+        public void run() {
+            try {
+                Socket socket = this.serverSocket.accept();
+                byte[] bytes = new byte[1024];
+                if (this.dropAfter >= 0) {
+                    InputStream in = socket.getInputStream();
+                    int count = 0;
+                    int n;
+                    while (count < this.dropAfter && (n = in.read(bytes)) != -1)
+                        count += n;
+                    socket.close();
+                    socket = this.serverSocket.accept();
+                    this.reconnected = true;
+                }
+                InputStream in = socket.getInputStream();
+                int n;
+                while ((n = in.read(bytes)) != -1)
+                    this.received.write(bytes, 0, n);
+                socket.close();
+                this.serverSocket.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public boolean isReconnected() {
+            return this.reconnected;
+        }
+
+        public String received() throws IOException {
+            return this.received.toString("UTF-8");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+public class StreamEncoderTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ByteArrayOutputStream out;
+    private int drainCount;
+    private StreamEncoder encoder;
+
+    @Before
+    public void setUp() {
+        this.out = new ByteArrayOutputStream();
+        this.drainCount = 0;
+        this.encoder = new StreamEncoder(UTF_8, ByteBuffer.allocate(4)) {
+            @Override
+            protected ByteBuffer drain(ByteBuffer bytes) {
+                StreamEncoderTest.this.drainCount++;
+                bytes.flip();
+                StreamEncoderTest.this.out.write(bytes.array(), bytes.arrayOffset(), bytes.limit());
+                bytes.clear();
+                return bytes;
+            }
+        };
+    }
+
+    @Test
+    public void splitPairTest() throws Exception {
+        this.encoder.encode("x\uD83D");
+        this.encoder.drain();
+        Assert.assertEquals("x", this.written());
+        this.encoder.encode("\uDE00y");
+        this.encoder.end();
+        this.encoder.drain();
+        Assert.assertEquals("x\uD83D\uDE00y", this.written());
+    }
+
+    @Test
+    public void splitPairOneCharTest() throws Exception {
+        this.encoder.encode("\uD83D");
+        this.encoder.encode("");
+        this.encoder.encode("\uDE00");
+        this.encoder.end();
+        this.encoder.drain();
+        Assert.assertEquals("\uD83D\uDE00", this.written());
+    }
+
+    @Test
+    public void twoHighSurrogatesTest() throws Exception {
+        this.encoder.encode("\uD83D");
+        this.encoder.encode("\uD83D\uDE00");
+        this.encoder.end();
+        this.encoder.drain();
+        Assert.assertEquals("?\uD83D\uDE00", this.written());
+    }
+
+    @Test
+    public void highSurrogateAtEndTest() throws Exception {
+        this.encoder.encode("x\uD83D");
+        this.encoder.end();
+        this.encoder.drain();
+        Assert.assertEquals("x?", this.written());
+
+        // the encoder is ready for a new stream
+        this.encoder.encode("y");
+        this.encoder.end();
+        this.encoder.drain();
+        Assert.assertEquals("x?y", this.written());
+    }
+
+    @Test
+    public void overflowTest() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            sb.append("é\uD83D\uDE00 ");
+        this.encoder.encode(sb);
+        this.encoder.end();
+        this.encoder.drain();
+        Assert.assertEquals(sb.toString(), this.written());
+        Assert.assertTrue(this.drainCount >= 700 / 4);
+    }
+
+    @Test
+    public void drainEmptyTest() throws Exception {
+        this.encoder.drain();
+        this.encoder.encode("");
+        this.encoder.drain();
+        Assert.assertEquals(0, this.drainCount);
+    }
+
+    private String written() throws Exception {
+        return this.out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Helpers for the tests that write files.
+ */
+final class TestFiles {
+    private TestFiles() {
+    }
+
+    /**
+     * @param file the file
+     * @param charset the charset of the file
+     * @return the content of the file
+     * @throws IOException
+     */
+    static String read(File file, Charset charset) throws IOException {
+        Reader r = new InputStreamReader(new FileInputStream(file), charset);
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] cbuf = new char[1024];
+            int n;
+            while ((n = r.read(cbuf)) != -1)
+                sb.append(cbuf, 0, n);
+            return sb.toString();
+        } finally {
+            r.close();
+        }
+    }
+}
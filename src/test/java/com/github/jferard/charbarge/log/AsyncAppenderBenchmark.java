@@ -0,0 +1,126 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge.log;
+
+import com.github.jferard.charbarge.CharBarge;
+import com.github.jferard.charbarge.RollingFileConsumer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Compare the throughput of an AsyncAppender and of a synchronous FileWriter appender.
+ * Usage: AsyncAppenderBenchmark [threads] [events per thread]
+ */
+public class AsyncAppenderBenchmark {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+
+        for (int run = 0; run < 3; run++) {
+            File syncFile = File.createTempFile("sync", ".log");
+            SyncAppender syncAppender = new SyncAppender(new FileWriter(syncFile), new LogFormatter());
+            report("FileWriter", threads, events, run(threads, events, syncAppender));
+            syncFile.delete();
+
+            File asyncFile = File.createTempFile("async", ".log");
+            CharBarge barge = CharBarge.create(64 * 1024);
+            RollingFileConsumer consumer = new RollingFileConsumer(barge, asyncFile, Charset.forName("UTF-8"),
+                    Long.MAX_VALUE, 0);
+            consumer.start();
+            AsyncAppender asyncAppender = new AsyncAppender(barge, new LogFormatter(), FullBargePolicy.BLOCK);
+            long nanos = run(threads, events, asyncAppender);
+            asyncAppender.close();
+            consumer.join();
+            report("AsyncAppender", threads, events, nanos);
+            asyncFile.delete();
+
+            syncAppender.close();
+        }
+    }
+
+    private static long run(int threads, final int events, final Object appender) throws InterruptedException {
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            producers[t] = new Thread() {
+                @Override
+                public void run() {
+                    StringBuilder message = new StringBuilder();
+                    for (int i = 0; i < events; i++) {
+                        message.setLength(0);
+                        message.append("event number ").append(i);
+                        if (appender instanceof AsyncAppender)
+                            ((AsyncAppender) appender).append(Level.INFO, "a.benchmark.logger", message);
+                        else
+                            ((SyncAppender) appender).append(Level.INFO, "a.benchmark.logger", message);
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread producer : producers)
+            producer.start();
+        for (Thread producer : producers)
+            producer.join();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, int threads, int events, long nanos) {
+        long total = (long) threads * events;
+        System.out.printf("%-14s %d threads: %,d events in %d ms (%,d events/s)%n", name, threads, total,
+                nanos / 1000000, total * 1000000000L / nanos);
+    }
+
+    /**
+     * A synchronous appender: formats the event and writes it to a FileWriter under a lock.
+     */
+    private static class SyncAppender {
+        private Writer writer;
+        private LogFormatter formatter;
+        private LogEvent event;
+        private CharBuffer buffer;
+
+        public SyncAppender(Writer writer, LogFormatter formatter) {
+            this.writer = writer;
+            this.formatter = formatter;
+            this.event = new LogEvent();
+            this.buffer = CharBuffer.allocate(1024);
+        }
+
+        public synchronized void append(Level level, String loggerName, CharSequence message) {
+            this.event.set(System.currentTimeMillis(), level, Thread.currentThread().getName(), loggerName,
+                    message, null);
+            this.buffer.clear();
+            this.formatter.format(this.event, this.buffer);
+            try {
+                this.writer.write(this.buffer.array(), 0, this.buffer.position());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public void close() throws IOException {
+            this.writer.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge.log;
+
+import com.github.jferard.charbarge.AppendableConsumer;
+import com.github.jferard.charbarge.CharBarge;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.TimeZone;
+
+public class AsyncAppenderTest {
+    @Test
+    public void blockTest() throws Exception {
+        CharBarge barge = CharBarge.create(256);
+        AsyncAppender appender = new AsyncAppender(barge, new LogFormatter(TimeZone.getTimeZone("UTC")),
+                FullBargePolicy.BLOCK);
+        StringWriter w = new StringWriter();
+        AppendableConsumer c = new AppendableConsumer(barge, w);
+        c.start();
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            message.setLength(0);
+            message.append("message ").append(i);
+            Assert.assertTrue(appender.append(Level.INFO, "a.logger", message));
+        }
+        appender.close();
+        c.join();
+
+        String[] lines = w.toString().split("\n");
+        Assert.assertEquals(1000, lines.length);
+        String prefix = "\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3} INFO  \\[main\\] a\\.logger - ";
+        for (int i = 0; i < 1000; i++)
+            Assert.assertTrue(lines[i], lines[i].matches(prefix + "message " + i));
+        Assert.assertEquals(0, appender.getDiscardedCount());
+    }
+
+    @Test
+    public void discardTest() throws Exception {
+        CharBarge barge = CharBarge.create(256);
+        AsyncAppender appender = new AsyncAppender(barge, new LogFormatter(), FullBargePolicy.DISCARD);
+        int appended = 0;
+        for (int i = 0; i < 100; i++) {
+            if (appender.append(Level.INFO, "a.logger", "a message"))
+                appended++;
+        }
+        Assert.assertTrue(appended > 0);
+        Assert.assertEquals(100 - appended, appender.getDiscardedCount());
+
+        StringWriter w = new StringWriter();
+        AppendableConsumer c = new AppendableConsumer(barge, w);
+        c.start();
+        appender.close();
+        c.join();
+        Assert.assertEquals(appended, w.toString().split("\n").length);
+    }
+
+    @Test
+    public void largeThrowableTest() throws Exception {
+        CharBarge barge = CharBarge.create(256);
+        AsyncAppender appender = new AsyncAppender(barge, new LogFormatter(), FullBargePolicy.BLOCK);
+        StringWriter w = new StringWriter();
+        AppendableConsumer c = new AppendableConsumer(barge, w);
+        c.start();
+        Assert.assertTrue(appender.append(Level.INFO, "a.logger", "first"));
+        Assert.assertTrue(appender.append(Level.ERROR, "a.logger", "failed", this.deepException(100)));
+        Assert.assertTrue(appender.append(Level.INFO, "a.logger", "last"));
+        appender.close();
+        c.join();
+
+        Assert.assertEquals(0, appender.getDiscardedCount());
+        String logged = w.toString();
+        Assert.assertTrue(logged.contains(" - first\n"));
+        Assert.assertTrue(logged.contains(" - failed\njava.lang.IllegalStateException: outer\n"));
+        Assert.assertTrue(logged.contains(" more\n"));
+        Assert.assertTrue(logged.endsWith(" - last\n"));
+    }
+
+    private Exception deepException(int depth) {
+        Exception e = new IllegalStateException("outer");
+        StackTraceElement[] elements = new StackTraceElement[depth];
+        for (int i = 0; i < depth; i++)
+            elements[i] = new StackTraceElement("a.Class", "method", "Class.java", i);
+        e.setStackTrace(elements);
+        return e;
+    }
+
+    @Test
+    public void formatterFailureTest() throws Exception {
+        CharBarge barge = CharBarge.create(256);
+        AsyncAppender appender = new AsyncAppender(barge, new LogFormatter(), FullBargePolicy.BLOCK);
+        StringWriter w = new StringWriter();
+        AppendableConsumer c = new AppendableConsumer(barge, w);
+        c.start();
+        Exception evil = new IllegalStateException() {
+            @Override
+            public String toString() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        Assert.assertTrue(appender.append(Level.INFO, "a.logger", "first"));
+        Assert.assertFalse(appender.append(Level.ERROR, "a.logger", "evil", evil));
+        Assert.assertTrue(appender.append(Level.INFO, "a.logger", "last"));
+        appender.close();
+        c.join();
+
+        Assert.assertEquals(1, appender.getDiscardedCount());
+        String[] lines = w.toString().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0], lines[0].endsWith(" INFO  [main] a.logger - first"));
+        Assert.assertTrue(lines[1], lines[1].endsWith(" INFO  [main] a.logger - last"));
+    }
+
+    @Test
+    public void tooLargeTest() throws Exception {
+        CharBarge barge = CharBarge.create(32);
+        AsyncAppender appender = new AsyncAppender(barge, new LogFormatter(), FullBargePolicy.BLOCK);
+        Assert.assertFalse(appender.append(Level.INFO, "a.logger", "a message"));
+        Assert.assertEquals(1, appender.getDiscardedCount());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * CharBarge - Transferring char sequences in a producer-consumer pattern
+ *     Copyright (C) 2017 J. Férard <https://github.com/jferard>
+ *
+ * This file is part of CharBarge.
+ *
+ * CharBarge is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * CharBarge is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses />.
+ */
+package com.github.jferard.charbarge.log;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.TimeZone;
+
+public class LogFormatterTest {
+    private static final long TIME = 1500886530123L; // 2017-07-24 08:55:30.123 UTC
+
+    private LogFormatter formatter;
+    private LogEvent event;
+
+    @Before
+    public void setUp() {
+        this.formatter = new LogFormatter(TimeZone.getTimeZone("UTC"));
+        this.event = new LogEvent();
+    }
+
+    @Test
+    public void formatTest() {
+        CharBuffer out = CharBuffer.allocate(100);
+        this.event.set(TIME, Level.INFO, "main", "a.logger", new StringBuilder("a message"), null);
+        this.formatter.format(this.event, out);
+        Assert.assertEquals("2017-07-24 08:55:30.123 INFO  [main] a.logger - a message\n", this.formatted(out));
+    }
+
+    @Test
+    public void formatNextMinuteTest() {
+        CharBuffer out = CharBuffer.allocate(200);
+        this.event.set(TIME, Level.WARN, "main", "a.logger", "first", null);
+        this.formatter.format(this.event, out);
+        this.event.set(TIME + 30000, Level.ERROR, "main", "a.logger", "second", null);
+        this.formatter.format(this.event, out);
+        this.event.set(TIME - 30123, Level.DEBUG, "main", "a.logger", null, null);
+        this.formatter.format(this.event, out);
+        Assert.assertEquals("2017-07-24 08:55:30.123 WARN  [main] a.logger - first\n" +
+                "2017-07-24 08:56:00.123 ERROR [main] a.logger - second\n" +
+                "2017-07-24 08:55:00.000 DEBUG [main] a.logger - null\n", this.formatted(out));
+    }
+
+    @Test
+    public void formatThrowableTest() {
+        CharBuffer out = CharBuffer.allocate(10000);
+        Exception e = new IllegalStateException("outer", new RuntimeException("inner"));
+        this.event.set(TIME, Level.ERROR, "main", "a.logger", "failed", e);
+        this.formatter.format(this.event, out);
+        String formatted = this.formatted(out);
+        Assert.assertTrue(formatted.startsWith("2017-07-24 08:55:30.123 ERROR [main] a.logger - failed\n" +
+                "java.lang.IllegalStateException: outer\n\tat com.github.jferard.charbarge.log.LogFormatterTest"));
+        Assert.assertTrue(formatted.contains("\nCaused by: java.lang.RuntimeException: inner\n\tat "));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void formatOverflowTest() {
+        CharBuffer out = CharBuffer.allocate(30);
+        this.event.set(TIME, Level.INFO, "main", "a.logger", "a message", null);
+        this.formatter.format(this.event, out);
+    }
+
+    @Test
+    public void formatTruncatedThrowableTest() {
+        CharBuffer out = CharBuffer.allocate(300);
+        Exception e = new IllegalStateException("outer", new RuntimeException("inner"));
+        e.setStackTrace(this.stackTrace(20));
+        e.getCause().setStackTrace(this.stackTrace(5));
+        this.event.set(TIME, Level.ERROR, "main", "a.logger", "failed", e);
+        this.formatter.format(this.event, out);
+        String[] lines = this.formatted(out).split("\n");
+        Assert.assertEquals("java.lang.IllegalStateException: outer", lines[1]);
+        Assert.assertEquals("\tat a.Class.method(Class.java:0)", lines[2]);
+        int written = lines.length - 3;
+        Assert.assertEquals("\t... " + (20 + 1 + 5 - written) + " more", lines[lines.length - 1]);
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void formatThrowableOverflowTest() {
+        CharBuffer out = CharBuffer.allocate(300);
+        out.put("a previous record\n");
+        Exception e = new IllegalStateException("outer");
+        e.setStackTrace(this.stackTrace(20));
+        this.event.set(TIME, Level.ERROR, "main", "a.logger", "failed", e);
+        this.formatter.format(this.event, out);
+    }
+
+    @Test
+    public void formatCircularThrowableTest() {
+        CharBuffer out = CharBuffer.allocate(10000);
+        Exception outer = new IllegalStateException("outer");
+        Exception inner = new RuntimeException("inner", outer);
+        outer.initCause(inner);
+        outer.setStackTrace(this.stackTrace(1));
+        inner.setStackTrace(this.stackTrace(1));
+        this.event.set(TIME, Level.ERROR, "main", "a.logger", "failed", outer);
+        this.formatter.format(this.event, out);
+        Assert.assertEquals("2017-07-24 08:55:30.123 ERROR [main] a.logger - failed\n" +
+                "java.lang.IllegalStateException: outer\n" +
+                "\tat a.Class.method(Class.java:0)\n" +
+                "Caused by: java.lang.RuntimeException: inner\n" +
+                "\tat a.Class.method(Class.java:0)\n" +
+                "\t[CIRCULAR REFERENCE: java.lang.IllegalStateException: outer]\n", this.formatted(out));
+    }
+
+    private StackTraceElement[] stackTrace(int length) {
+        StackTraceElement[] elements = new StackTraceElement[length];
+        for (int i = 0; i < length; i++)
+            elements[i] = new StackTraceElement("a.Class", "method", "Class.java", i);
+        return elements;
+    }
+
+    private String formatted(CharBuffer out) {
+        out.flip();
+        return out.toString();
+    }
+}